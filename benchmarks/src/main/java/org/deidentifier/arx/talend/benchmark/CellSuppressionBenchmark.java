@@ -0,0 +1,57 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.benchmark;
+
+import org.deidentifier.arx.talend.processor.DataBuffer;
+import org.deidentifier.arx.talend.processor.OperationCellSuppression;
+import org.deidentifier.arx.talend.processor.ParametersRisk;
+import org.deidentifier.arx.talend.processor.ParametersRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the cell suppression of a single block with the default settings.
+ * Hierarchies are built for each invocation, as for the first block of a job.
+ * @author Florian Wiedner
+ */
+public class CellSuppressionBenchmark extends SyntheticBenchmark {
+    /** The block */
+    private DataBuffer buffer;
+
+    /** The thresholds */
+    private ParametersRisk risk;
+
+    /** The runtime settings */
+    private ParametersRuntime runtime;
+
+    /**
+     * Reads the data into a buffer.
+     */
+    @Setup(Level.Trial)
+    public void prepare() {
+        buffer = toBuffer();
+        risk = getRiskSettings();
+        runtime = new ParametersRuntime();
+    }
+
+    @Benchmark
+    public DataBuffer perform() throws Exception {
+        return new OperationCellSuppression(risk, runtime).perform(buffer);
+    }
+}
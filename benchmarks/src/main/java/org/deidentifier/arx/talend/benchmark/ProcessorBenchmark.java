@@ -0,0 +1,68 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.benchmark;
+
+import java.util.Arrays;
+
+import org.deidentifier.arx.talend.processor.ARXDeidentifierProcessor;
+import org.deidentifier.arx.talend.processor.ARXDeidentifierProcessorConfiguration;
+import org.deidentifier.arx.talend.processor.ParametersRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+import org.talend.sdk.component.api.processor.OutputEmitter;
+import org.talend.sdk.component.api.record.Record;
+
+/**
+ * Benchmarks the processor from the first record to the last output, as run by
+ * Talend for a single group of records.
+ * @author Florian Wiedner
+ */
+public class ProcessorBenchmark extends SyntheticBenchmark {
+    /** The mode */
+    @Param({"ANONYMIZE", "ASSESS"})
+    public ParametersRuntime.Mode mode;
+
+    /** The block size, zero for a single block */
+    @Param({"0", "1000"})
+    public int blockSize;
+
+    /** The number of threads */
+    @Param({"1"})
+    public int threads;
+
+    @Benchmark
+    public void process(Blackhole blackhole) {
+        ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(getRiskSettings());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(mode);
+        configuration.getRuntimeSettings().setBlockSize(blockSize);
+        configuration.getRuntimeSettings().setThreads(threads);
+        configuration.getRuntimeSettings().setInputStructure(Arrays.asList(header));
+
+        ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, factory);
+        OutputEmitter<Object> output = blackhole::consume;
+        processor.init();
+        for (Record record : records) {
+            processor.bufferizer(record, output, output);
+        }
+        processor.endBatch(output, output, output);
+        processor.release();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.deidentifier.arx.talend.processor.DataBuffer;
+import org.deidentifier.arx.talend.processor.OperationDataTransformer;
+import org.deidentifier.arx.talend.processor.ParametersRisk;
+import org.deidentifier.arx.talend.processor.SyntheticRecords;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.talend.sdk.component.api.record.Record;
+import org.talend.sdk.component.api.record.Schema;
+import org.talend.sdk.component.api.service.record.RecordBuilderFactory;
+import org.talend.sdk.component.runtime.record.RecordBuilderFactoryImpl;
+
+/**
+ * This class is the base of all benchmarks. It generates the synthetic data for
+ * the shape given by the parameters once per trial, with the generator of the tests.
+ * The payload columns alternate between strings, integers and doubles.
+ * @author Florian Wiedner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class SyntheticBenchmark {
+    /** The seed of the synthetic data */
+    public static final long SEED = 0x4152584c;
+
+    /** The number of rows */
+    @Param({"1000", "10000"})
+    public int rows;
+
+    /** The number of columns */
+    @Param({"8", "32"})
+    public int columns;
+
+    /** The number of quasi-identifiers */
+    @Param({"2", "4"})
+    public int qis;
+
+    /** The number of distinct values of each quasi-identifier */
+    @Param({"10", "100"})
+    public int cardinality;
+
+    /** The factory for records */
+    protected RecordBuilderFactory factory;
+
+    /** The names of the columns */
+    protected String[] header;
+
+    /** The quasi-identifiers */
+    protected List<ParametersRisk.QIValue> quasiIdentifiers;
+
+    /** The records */
+    protected List<Record> records;
+
+    /**
+     * Generates the data.
+     */
+    @Setup(Level.Trial)
+    public void generate() {
+        if (qis > columns) {
+            throw new IllegalArgumentException("More quasi-identifiers than columns");
+        }
+        factory = new RecordBuilderFactoryImpl("benchmark");
+        int[] cardinalities = new int[qis];
+        Arrays.fill(cardinalities, cardinality);
+        SyntheticRecords generator = new SyntheticRecords(factory, rows, SEED)
+                .withQis(cardinalities).withPayload(columns - qis, 16).withTypedPayload(true);
+        header = generator.getHeader().toArray(new String[0]);
+        quasiIdentifiers = generator.getQis();
+        records = new ArrayList<>(rows);
+        generator.forEachRemaining(records::add);
+    }
+
+    /**
+     * Returns the thresholds, with the quasi-identifiers of the data.
+     *
+     * @return ParametersRisk
+     */
+    protected ParametersRisk getRiskSettings() {
+        ParametersRisk risk = new ParametersRisk();
+        risk.setQis(quasiIdentifiers);
+        return risk;
+    }
+
+    /**
+     * Returns a new buffer of the columns, in which the quasi-identifiers are strings,
+     * as prepared by the processor.
+     *
+     * @return DataBuffer
+     */
+    protected DataBuffer newBuffer() {
+        Schema.Type[] types = new Schema.Type[header.length];
+        Arrays.fill(types, Schema.Type.STRING);
+        if (!records.isEmpty()) {
+            types = new OperationDataTransformer().getTypes(records.get(0).getSchema(), header);
+            Arrays.fill(types, 0, qis, Schema.Type.STRING);
+        }
+        return new DataBuffer(header, types, null, 0L);
+    }
+
+    /**
+     * Returns a buffer containing all records.
+     *
+     * @return DataBuffer
+     */
+    protected DataBuffer toBuffer() {
+        OperationDataTransformer transformer = new OperationDataTransformer();
+        DataBuffer buffer = newBuffer();
+        for (Record record : records) {
+            transformer.read(record, buffer);
+        }
+        return buffer;
+    }
+}
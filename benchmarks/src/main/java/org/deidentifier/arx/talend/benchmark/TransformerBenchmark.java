@@ -0,0 +1,63 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.benchmark;
+
+import org.deidentifier.arx.talend.processor.DataBuffer;
+import org.deidentifier.arx.talend.processor.OperationDataTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.talend.sdk.component.api.record.Record;
+
+/**
+ * Benchmarks reading records into a buffer and writing a buffer as JSON objects or records.
+ * @author Florian Wiedner
+ */
+public class TransformerBenchmark extends SyntheticBenchmark {
+    /** The buffer to write */
+    private DataBuffer buffer;
+
+    /**
+     * Reads the data into a buffer.
+     */
+    @Setup(Level.Trial)
+    public void prepare() {
+        buffer = toBuffer();
+    }
+
+    @Benchmark
+    public DataBuffer read() {
+        OperationDataTransformer transformer = new OperationDataTransformer();
+        DataBuffer result = newBuffer();
+        for (Record record : records) {
+            transformer.read(record, result);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void write(Blackhole blackhole) {
+        new OperationDataTransformer().write(buffer, blackhole::consume);
+    }
+
+    @Benchmark
+    public void writeRecords(Blackhole blackhole) {
+        new OperationDataTransformer().writeRecords(buffer, blackhole::consume, factory);
+    }
+}
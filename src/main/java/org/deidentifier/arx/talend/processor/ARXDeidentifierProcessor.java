@@ -1,13 +1,23 @@
 package org.deidentifier.arx.talend.processor;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import javax.json.*;
 
 import org.talend.sdk.component.api.component.Icon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.talend.sdk.component.api.component.Version;
 import org.talend.sdk.component.api.configuration.Option;
 import org.talend.sdk.component.api.meta.Documentation;
@@ -18,6 +28,8 @@ import org.talend.sdk.component.api.processor.Output;
 import org.talend.sdk.component.api.processor.OutputEmitter;
 import org.talend.sdk.component.api.processor.Processor;
 import org.talend.sdk.component.api.record.Record;
+import org.talend.sdk.component.api.record.Schema;
+import org.talend.sdk.component.api.service.record.RecordBuilderFactory;
 
 @Version(1) // default version is 1, if some configuration changes happen between 2 versions you can add a migrationHandler
 @Icon(value = Icon.IconType.CUSTOM, custom="logo")
@@ -26,89 +38,598 @@ import org.talend.sdk.component.api.record.Record;
 public class ARXDeidentifierProcessor implements Serializable {
 
     private final ARXDeidentifierProcessorConfiguration configuration;
-    private List<String[]> buffer;
+    private final RecordBuilderFactory recordBuilderFactory;
+    private transient Block block;
+    private transient Block heldBack;
+    private transient Map<String,Block> partitions;
+    private int bufferedRows;
+    private int minFlushRows;
+    private int[] qis;
     private boolean first;
     private String[] header;
+    private Schema.Type[] types;
     private ParametersStatistics statistics;
+    private transient OperationDataTransformer transformer;
+    private transient HierarchyCache hierarchies;
+    private transient BlockSizeController blockSizes;
+    private transient TimeBudget budget;
+    private transient AtomicReference<Map<String,Integer>> transformations;
+    private transient ExecutorService executor;
+    private transient CompletionService<BlockResult> completion;
+    private transient Deque<Future<BlockResult>> pending;
+    private transient ProcessorMonitor monitor;
+    private transient String searchMode;
+    private transient RiskSummary summary;
+    private transient LongSupplier clock;
 
-    public ARXDeidentifierProcessor(@Option("configuration") final ARXDeidentifierProcessorConfiguration configuration) {
+    /** The logger, for settings which do not match the input and the statistics of each group */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ARXDeidentifierProcessor.class);
+
+    /** The number of records after which the state of the buffer is published via JMX, a power of two */
+    private static final int MONITOR_INTERVAL = 1024;
+
+    /** Checks whether records are recorded while buffering, so that no event is allocated per record otherwise */
+    private static final ProcessingEvent BUFFERIZE = ProcessingEvent.create(ProcessingEvent.Type.BUFFERIZE);
+
+    public ARXDeidentifierProcessor(@Option("configuration") final ARXDeidentifierProcessorConfiguration configuration,
+                                    final RecordBuilderFactory recordBuilderFactory) {
         this.configuration = configuration;
+        this.recordBuilderFactory = recordBuilderFactory;
+    }
+
+    /**
+     * Sets the clock for the age of blocks, which defaults to {@link System#nanoTime()}.
+     *
+     * @param clock The clock, returning the current time in nanoseconds
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
     }
 
     @PostConstruct
     public void init() {
-        this.buffer=new ArrayList<>();
+        try{
+            this.initialize();
+        }catch(RuntimeException e){
+            // Release the workers and the monitor, as the runtime does not release processors which failed to start
+            this.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets up the processor.
+     */
+    private void initialize() {
+        if(this.configuration.getRuntimeSettings().doRecordRouting()&&this.configuration.getRiskSettings().getQis().size()>EquivalenceClasses.MAX_QIS){
+            // The classes of the rows are needed for routing, but only support a limited number of quasi-identifiers
+            throw new IllegalArgumentException("Record routing supports at most "+EquivalenceClasses.MAX_QIS+" quasi-identifiers, but "+this.configuration.getRiskSettings().getQis().size()+" are configured");
+        }
         this.first=true;
+        if(this.clock==null){
+            this.clock=System::nanoTime;
+        }
         this.statistics = new ParametersStatistics();
+        this.transformer = new OperationDataTransformer();
+        this.hierarchies = new HierarchyCache();
+        this.transformations = new AtomicReference<>();
+        if(this.configuration.getRuntimeSettings().doAdaptiveBlocking()){
+            this.blockSizes = new BlockSizeController(this.configuration.getRuntimeSettings());
+        }
+        if(this.configuration.getRuntimeSettings().hasJobDeadline()){
+            this.budget = new TimeBudget(this.configuration.getRuntimeSettings());
+        }
+        if(this.configuration.getRuntimeSettings().doAsynchronousProcessing()){
+            this.executor = Executors.newFixedThreadPool(Math.max(1,this.configuration.getRuntimeSettings().getThreads()), runnable->{
+                Thread thread = new Thread(runnable, "ARXDeidentifier-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.completion = new ExecutorCompletionService<>(this.executor);
+            this.pending = new ArrayDeque<>();
+        }
+        OperationCellSuppression op = new OperationCellSuppression(configuration.getRiskSettings(), configuration.getRuntimeSettings(), this.hierarchies, this.transformations, this.budget);
+        this.searchMode = this.configuration.getRuntimeSettings().getMode()== ParametersRuntime.Mode.ANONYMIZE?op.getSearchMode():ProcessingEvent.NONE;
+        // Partial blocks smaller than the minimal class size would be suppressed completely
+        this.minFlushRows = Math.max(this.configuration.getRuntimeSettings().getMinFlushRows(),op.getMinimalClassSize());
+        if(this.configuration.getRuntimeSettings().isJmxMonitoring()){
+            this.monitor = new ProcessorMonitor(this.statistics);
+            this.monitor.register("ARXDeidentifier-"+System.identityHashCode(this));
+        }
     }
 
     @ElementListener
     public void bufferizer(
-            @Input final Record defaultInput, @Output final OutputEmitter<JsonObject> outputMain,@Output("Error") final OutputEmitter<JsonObject> error) {
-        if(this.configuration.getRuntimeSettings().doRowBlocking()&&this.configuration.getRuntimeSettings().getBlockSize()<this.buffer.size()){
-            this.rowProcessing(outputMain,error);
-            this.buffer=new ArrayList<>();
-            this.buffer.add(this.header);
+            @Input final Record defaultInput, @Output final OutputEmitter<Object> outputMain,@Output("Error") final OutputEmitter<Object> error) {
+        ProcessingEvent event = BUFFERIZE.isEnabled()?ProcessingEvent.create(ProcessingEvent.Type.BUFFERIZE):null;
+        if(event!=null){
+            event.begin();
+        }
+        ParametersRuntime runtime = this.configuration.getRuntimeSettings();
+        if(this.executor!=null){
+            // Pass on blocks completed in the background as early as possible
+            this.emitCompleted(runtime.getMaxPendingBlocks(),outputMain,error);
+        }
+        if(runtime.hasFlushAge()){
+            // Best effort only: blocks are flushed when a record arrives, as emitting requires a callback of the runtime
+            this.flushOverdue(outputMain,error);
+        }
+        if(runtime.doRowBlocking()&&this.block!=null&&this.getBlockSize()<=this.block.getNumRows()){
+            if(runtime.doHoldBack()){
+                // Hold the block back, so that a small last block can be merged with it
+                if(this.heldBack!=null){
+                    this.rowProcessing(this.heldBack,outputMain,error);
+                }
+                this.heldBack=this.block;
+            }else{
+                this.rowProcessing(this.block,outputMain,error);
+            }
+            this.block=this.newBlock();
         }
 
         if(this.first){
             //Reset first (Only executed once)
             this.first=false;
-            this.header = new String[this.configuration.getRuntimeSettings().getInputStructure().size()];
-            this.configuration.getRuntimeSettings().getInputStructure().forEach((element)->this.header[this.configuration.getRuntimeSettings().getInputStructure().indexOf(element)]=element);//Needs only be done once as all entries are the Same.
+            this.header = new String[runtime.getInputStructure().size()];
+            runtime.getInputStructure().forEach((element)->this.header[runtime.getInputStructure().indexOf(element)]=element);//Needs only be done once as all entries are the Same.
             for (ParametersRisk.QIValue qi : this.configuration.getRiskSettings().getQis()) {
                 if (!Arrays.asList(this.header).contains(qi.getField())) {
-                    System.err.println("Quasi-Identifier not in List");
+                    LOGGER.warn("Quasi-identifier {} not in the input structure", qi.getField());
                 }
             }
-            this.buffer.add(this.header);
-            this.buffer.add(new OperationDataTransformer().read(defaultInput,this.header));
+            // Quasi-identifiers are passed to ARX as strings, all other columns keep their type
+            this.types=this.transformer.getTypes(defaultInput.getSchema(),this.header);
+            this.qis=this.configuration.getRiskSettings().getQiIndices(this.header);
+            for (int qi : this.qis) {
+                this.types[qi]=Schema.Type.STRING;
+            }
+            if(runtime.doDistributedAssessment()){
+                List<String> names = new ArrayList<>();
+                for (int qi : this.qis) {
+                    names.add(this.header[qi]);
+                }
+                this.summary=new RiskSummary(names);
+            }
+            if(runtime.doPartitioning()){
+                if (!Arrays.asList(this.header).contains(runtime.getPartitionField())) {
+                    LOGGER.warn("Partition field {} not in the input structure", runtime.getPartitionField());
+                }
+                this.partitions=new LinkedHashMap<>();
+            }else{
+                this.block=this.newBlock();
+            }
+        }
+
+        if(this.partitions!=null){
+            this.partitioning(defaultInput,outputMain,error);
         }else{
-            this.buffer.add(new OperationDataTransformer().read(defaultInput,this.header));
+            long start = System.nanoTime();
+            this.transformer.read(defaultInput,this.block.getBuffer());
+            this.block.assess(this.qis);
+            if(this.block.getNumRows()==1){
+                this.block.setStarted(this.clock.getAsLong());
+            }
+            if(this.summary!=null){
+                this.summary.add(this.block.getBuffer(),this.block.getNumRows()-1,this.qis);
+            }
+            this.statistics.trackLatency(ParametersStatistics.Phase.READ,System.nanoTime()-start);
+        }
+        if((this.statistics.getLatencies(ParametersStatistics.Phase.READ).getCount()&(MONITOR_INTERVAL-1))==0){
+            this.updateMonitor();
+        }
+        if(event!=null){
+            event.end();
+            if(event.shouldCommit()){
+                event.set(this.block!=null?this.block.getNumRows():this.bufferedRows,this.qis.length,this.searchMode);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Adds a record to the block of its partition. Full blocks are processed right away.
+     * If too many rows are buffered, the largest block is processed.
+     *
+     * @param record The record
+     * @param outputMain The Main Output
+     * @param error The Error Output
+     */
+    private void partitioning(final Record record, final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        ParametersRuntime runtime = this.configuration.getRuntimeSettings();
+        Object value = record.get(Object.class,runtime.getPartitionField());
+        String key = value==null?OperationDataTransformer.MAGIC_NULL_VALUE:value.toString();
+        Block partition = this.partitions.get(key);
+        if(partition==null){
+            partition=this.newBlock();
+            this.partitions.put(key,partition);
+        }
+        long start = System.nanoTime();
+        this.transformer.read(record,partition.getBuffer());
+        partition.assess(this.qis);
+        if(partition.getNumRows()==1){
+            partition.setStarted(this.clock.getAsLong());
+        }
+        if(this.summary!=null){
+            this.summary.add(partition.getBuffer(),partition.getNumRows()-1,this.qis);
+        }
+        this.statistics.trackLatency(ParametersStatistics.Phase.READ,System.nanoTime()-start);
+        this.bufferedRows++;
+        if(runtime.doRowBlocking()&&this.getBlockSize()<=partition.getNumRows()){
+            this.flushPartition(key,outputMain,error);
+        }
+        if(runtime.getMaxBufferedRows()>0&&this.bufferedRows>runtime.getMaxBufferedRows()){
+            String largest=null;
+            Block largestBlock=null;
+            for(Map.Entry<String,Block> entry : this.partitions.entrySet()){
+                if(largestBlock==null||entry.getValue().getNumRows()>largestBlock.getNumRows()){
+                    largest=entry.getKey();
+                    largestBlock=entry.getValue();
+                }
+            }
+            this.flushPartition(largest,outputMain,error);
+        }
+    }
+
+    /**
+     * Processes the partial blocks whose oldest row has reached the flush age. Blocks
+     * with fewer rows than required are carried forward, until enough rows have arrived
+     * or the group ends.
+     *
+     * @param outputMain The Main Output
+     * @param error The Error Output
+     */
+    private void flushOverdue(final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        long now = this.clock.getAsLong();
+        long age = this.configuration.getRuntimeSettings().getFlushAgeMillis()*1000000L;
+        if(this.partitions!=null){
+            // Partitions are created with their oldest row, so that they are ordered by age
+            List<Block> overdue = new ArrayList<>();
+            Iterator<Map.Entry<String,Block>> iterator = this.partitions.entrySet().iterator();
+            while(iterator.hasNext()){
+                Block partition = iterator.next().getValue();
+                if(partition.getAge(now)<age){
+                    break;
+                }
+                if(partition.getNumRows()>=this.minFlushRows){
+                    iterator.remove();
+                    this.bufferedRows-=partition.getNumRows();
+                    overdue.add(partition);
+                }
+            }
+            for(Block partition : overdue){
+                this.rowProcessing(partition,outputMain,error);
+            }
+        }else if(this.block!=null&&this.block.getAge(now)>=age&&this.block.getNumRows()>=this.minFlushRows){
+            if(this.heldBack!=null){
+                this.rowProcessing(this.heldBack,outputMain,error);
+                this.heldBack=null;
+            }
+            this.rowProcessing(this.block,outputMain,error);
+            this.block=this.newBlock();
+        }
+    }
+
+    /**
+     * Processes the block of a partition and removes it.
+     *
+     * @param key The key of the partition
+     * @param outputMain The Main Output
+     * @param error The Error Output
+     */
+    private void flushPartition(final String key, final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        Block partition = this.partitions.remove(key);
+        this.bufferedRows-=partition.getNumRows();
+        this.rowProcessing(partition,outputMain,error);
+    }
+
+    /**
+     * Returns the size of the next block, which is adapted at runtime if configured.
+     *
+     * @return int
+     */
+    private int getBlockSize(){
+        return this.blockSizes!=null?this.blockSizes.getBlockSize():this.configuration.getRuntimeSettings().getBlockSize();
+    }
+
+    /**
+     * Returns a new block. In the assess mode, the risks of the block are assessed
+     * while it is buffered, if configured or needed for routing records. For more
+     * quasi-identifiers than supported by the equivalence classes, the risks are
+     * assessed by ARX once the block is complete.
+     *
+     * @return Block
+     */
+    private Block newBlock(){
+        ParametersRuntime runtime = this.configuration.getRuntimeSettings();
+        StreamingRiskAssessor assessor = null;
+        if(runtime.getMode()== ParametersRuntime.Mode.ASSESS&&(runtime.isStreamingAssessment()||runtime.doRecordRouting())&&this.qis.length<=EquivalenceClasses.MAX_QIS){
+            assessor=new StreamingRiskAssessor(this.qis.length);
         }
+        return new Block(this.newBuffer(),assessor);
+    }
 
+    /**
+     * Returns a new buffer for the input. Without row-blocking, the buffer spills
+     * to disk when the configured threshold is exceeded.
+     *
+     * @return DataBuffer
+     */
+    private DataBuffer newBuffer(){
+        ParametersRuntime runtime = this.configuration.getRuntimeSettings();
+        if(runtime.doRowBlocking()||!runtime.doSpilling()){
+            return new DataBuffer(this.header,this.types,null,0L);
+        }
+        File directory = runtime.getSpillDirectory()==null||runtime.getSpillDirectory().isEmpty()?new File(System.getProperty("java.io.tmpdir")):new File(runtime.getSpillDirectory());
+        return new DataBuffer(this.header,this.types,directory,runtime.getSpillThreshold()*1024L*1024L);
+    }
+
+    private void rowProcessing(final Block block, final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        ProcessingEvent event = ProcessingEvent.create(ProcessingEvent.Type.ROW_PROCESSING);
+        event.begin();
+        // Counts the cells suppressed in all blocks passed on meanwhile
+        long suppressed = this.statistics.getNumSuppressedCells();
+        if(this.executor==null){
+            this.emit(this.process(block.getBuffer(),block.getAssessor()),outputMain,error);
+        }else{
+            Future<BlockResult> future = this.completion.submit(()->this.process(block.getBuffer(),block.getAssessor()));
+            this.pending.addLast(future);
+            this.emitCompleted(this.configuration.getRuntimeSettings().getMaxPendingBlocks(),outputMain,error);
+        }
+        this.updateMonitor();
+        event.end();
+        if(event.shouldCommit()){
+            event.set(block.getNumRows(),this.qis.length,this.searchMode);
+            event.addSuppressedCells(this.statistics.getNumSuppressedCells()-suppressed);
+            event.commit();
+        }
     }
 
+    /**
+     * Publishes the state of the buffer and of the workers via JMX, if enabled.
+     */
+    private void updateMonitor(){
+        if(this.monitor==null){
+            return;
+        }
+        long rows = 0L;
+        long heapSize = 0L;
+        for(Block buffered : new Block[]{this.block,this.heldBack}){
+            if(buffered!=null){
+                rows+=buffered.getNumRows();
+                heapSize+=buffered.getBuffer().getHeapSize();
+            }
+        }
+        if(this.partitions!=null){
+            for(Block partition : this.partitions.values()){
+                rows+=partition.getNumRows();
+                heapSize+=partition.getBuffer().getHeapSize();
+            }
+        }
+        this.monitor.setBuffer(rows,heapSize);
+        this.monitor.setPendingBlocks(this.pending!=null?this.pending.size():0);
+    }
 
-    private void rowProcessing(final OutputEmitter<JsonObject> outputMain, final OutputEmitter<JsonObject> error){
+    /**
+     * Processes a block. This method does not access the emitters and may thus be
+     * called from worker threads.
+     *
+     * @param block The block
+     * @param assessor The risks assessed while buffering the block, null if not assessed
+     * @return BlockResult
+     */
+    private BlockResult process(final DataBuffer block, final StreamingRiskAssessor assessor){
         switch(this.configuration.getRuntimeSettings().getMode()){
             case ANONYMIZE:
-                OperationCellSuppression op = new OperationCellSuppression(configuration.getRiskSettings(), configuration.getRuntimeSettings());
-                List<String[]> output;
-                try {
-                    output=op.perform(this.buffer);
-                }catch(Exception $e){
-                    output = new OperationDataTransformer().getEmptyDataset(this.header,this.header.length,this.buffer.size());
-                }
-                this.statistics.trackSuppressedCells(this.buffer, output);
-                new OperationDataTransformer().write(output,outputMain);
-                break;
+                OperationCellSuppression op = new OperationCellSuppression(configuration.getRiskSettings(), configuration.getRuntimeSettings(), this.hierarchies, this.transformations, this.budget);
+                DataBuffer output;
+                ProcessingEvent event = ProcessingEvent.create(ProcessingEvent.Type.CELL_SUPPRESSION);
+                event.begin();
+                long start = System.nanoTime();
+                if(this.configuration.getRuntimeSettings().isSplitOnFailure()){
+                    output=op.perform(block,start+this.configuration.getRuntimeSettings().getRecoverySeconds()*1000000000L);
+                }else{
+                    try {
+                        output=op.perform(block);
+                    }catch(Exception $e){
+                        output = new OperationDataTransformer().getEmptyDataset(block);
+                    }
+                }
+                long duration = System.nanoTime()-start;
+                event.end();
+                if(this.blockSizes!=null){
+                    this.blockSizes.record(block.getNumRows(),duration);
+                }
+                if(this.budget!=null){
+                    this.budget.record(block.getNumRows(),duration);
+                }
+                ParametersStatistics statistics = op.getStatistics();
+                statistics.trackBlock(block.getNumRows());
+                statistics.trackSuppressedCells(block,output);
+                if(event.shouldCommit()){
+                    event.set(block.getNumRows(),this.qis.length,op.getSearchMode());
+                    event.addSuppressedCells(statistics.getNumSuppressedCells());
+                    event.commit();
+                }
+                return new BlockResult(block,output,null,false,statistics);
             case ASSESS:
+                if(this.configuration.getRuntimeSettings().doDistributedAssessment()){
+                    // Records are passed on, the risks are assessed for the merged summaries of all workers
+                    ParametersStatistics passed = new ParametersStatistics();
+                    passed.trackBlock(block.getNumRows());
+                    return new BlockResult(block,block,null,false,passed);
+                }
+                StreamingRiskAssessor classes = assessor;
+                if(classes==null&&this.configuration.getRuntimeSettings().doRecordRouting()){
+                    // Routing needs the classes of the rows, also for blocks not assessed while buffering
+                    classes=new StreamingRiskAssessor(this.qis.length);
+                    for(int row=0;row<block.getNumRows();row++){
+                        classes.add(block,row,this.qis);
+                    }
+                }
                 OperationRiskAssessment assessment = new OperationRiskAssessment(this.configuration.getRiskSettings());
-                ParametersRisk risk = assessment.calculate(this.buffer);
-                this.statistics.trackRisks(risk, this.buffer.size()-1);
-                if (!risk.satisfies(this.configuration.getRiskSettings())) { // Check if risks are fulfilled
-                    new OperationDataTransformer().write(this.buffer,error);
+                ParametersRisk risk = classes!=null?assessment.calculate(classes):assessment.calculate(block);
+                ParametersStatistics assessed = new ParametersStatistics();
+                assessed.trackBlock(block.getNumRows());
+                assessed.trackRisks(risk,block.getNumRows());
+                assessed.trackClassFootprint(classes!=null?classes.getFootprint():0L);
+                if(this.configuration.getRuntimeSettings().doRecordRouting()){
+                    // Only the records at risk are passed to the error channel
+                    BitSet atRisk = classes.getRowsAtRisk(block,this.qis,this.configuration.getRiskSettings().getHighestRisk());
+                    if(atRisk.isEmpty()){
+                        return new BlockResult(block,block,risk,false,assessed);
+                    }
+                    DataBuffer passed = block.newBuffer();
+                    DataBuffer rejected = block.newBuffer();
+                    for(int row=0;row<block.getNumRows();row++){
+                        (atRisk.get(row)?rejected:passed).add(block,row);
+                    }
+                    return new BlockResult(block,passed,risk,false,assessed,rejected);
+                }
+                // Check if risks are fulfilled
+                return new BlockResult(block,block,risk,!risk.satisfies(this.configuration.getRiskSettings()),assessed);
+            default:
+                throw new IllegalStateException("Unknown mode: "+this.configuration.getRuntimeSettings().getMode());
+        }
+    }
+
+    /**
+     * Passes the result of a block to the next step of the transformation.
+     *
+     * @param result The result
+     * @param outputMain The Main Output
+     * @param error The Error Output
+     */
+    private void emit(final BlockResult result, final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        this.statistics.merge(result.getStatistics());
+        ProcessingEvent event = ProcessingEvent.create(ProcessingEvent.Type.WRITE);
+        event.begin();
+        long start = System.nanoTime();
+        this.write(result.getOutput(),result.isError()?error:outputMain);
+        if(result.getRejected()!=null){
+            this.write(result.getRejected(),error);
+        }
+        this.statistics.trackLatency(ParametersStatistics.Phase.EMIT,System.nanoTime()-start);
+        this.release(result);
+        event.end();
+        if(event.shouldCommit()){
+            event.set(result.getInput().getNumRows(),this.qis.length,this.searchMode);
+            event.addSuppressedCells(result.getStatistics().getNumSuppressedCells());
+            event.commit();
+        }
+    }
+
+    /**
+     * Releases the segment files of the buffers of a result, once it has been passed on.
+     *
+     * @param result The result
+     */
+    private void release(final BlockResult result){
+        result.getInput().release();
+        result.getOutput().release();
+        if(result.getRejected()!=null){
+            result.getRejected().release();
+        }
+    }
+
+    /**
+     * Writes data in the configured output format.
+     *
+     * @param data The data
+     * @param emitter The output
+     */
+    private void write(final DataBuffer data, final OutputEmitter<Object> emitter){
+        if(this.configuration.getRuntimeSettings().getOutputFormat()== ParametersRuntime.OutputFormat.RECORD){
+            this.transformer.writeRecords(data,emitter,this.recordBuilderFactory);
+        }else{
+            this.transformer.write(data,emitter);
+        }
+    }
+
+    /**
+     * Emits all blocks processed by the workers so far, in the configured order. Waits
+     * for further blocks to complete as long as more than the given number of blocks are pending.
+     *
+     * @param maxPending The maximal number of blocks which may remain pending
+     * @param outputMain The Main Output
+     * @param error The Error Output
+     */
+    private void emitCompleted(final int maxPending, final OutputEmitter<Object> outputMain, final OutputEmitter<Object> error){
+        try {
+            while(!this.pending.isEmpty()){
+                if(this.configuration.getRuntimeSettings().getEmissionOrder()== ParametersRuntime.EmissionOrder.COMPLETION){
+                    Future<BlockResult> future = this.pending.size()>maxPending?this.completion.take():this.completion.poll();
+                    if(future==null){
+                        break;
+                    }
+                    this.pending.remove(future);
+                    this.emit(future.get(),outputMain,error);
                 }else{
-                    new OperationDataTransformer().write(this.buffer,outputMain);
+                    Future<BlockResult> future = this.pending.peekFirst();
+                    if(!future.isDone()&&this.pending.size()<=maxPending){
+                        break;
+                    }
+                    this.pending.removeFirst();
+                    this.emit(future.get(),outputMain,error);
                 }
-                break;
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for blocks", e);
+        }catch(ExecutionException e){
+            throw new IllegalStateException("Processing of block failed", e.getCause());
         }
     }
 
     @AfterGroup
-    public void endBatch(@Output final OutputEmitter<JsonObject> outputMain,@Output("Error") final OutputEmitter<JsonObject> error) {
+    public void endBatch(@Output final OutputEmitter<Object> outputMain,@Output("Error") final OutputEmitter<Object> error,@Output("Summary") final OutputEmitter<Object> summary) {
         // symmetric method of the beforeGroup() executed after the chunk processing
         // Note: if you don't need it you can delete it
-        if(buffer!=null){
-            this.rowProcessing(outputMain,error);
-            this.buffer=new ArrayList<>();
-            this.buffer.add(this.header);
+        if(this.heldBack!=null){
+            if(this.block!=null&&this.block.getNumRows()>0&&this.block.getNumRows()<this.getBlockSize()/2){
+                // Merge the small last block with the previous one
+                this.block=this.heldBack.concat(this.block,this.qis);
+            }else{
+                this.rowProcessing(this.heldBack,outputMain,error);
+            }
+            this.heldBack=null;
         }
-        if(this.configuration.getRuntimeSettings().getMode()== ParametersRuntime.Mode.ASSESS){
-            System.out.println("done");
-        }else{
-            System.out.println("Fraction of suppressed cells: " + this.statistics.getFractionOfSuppressedCells());
+        if(this.block!=null&&this.block.getNumRows()>0){
+            this.rowProcessing(this.block,outputMain,error);
+            this.block=this.newBlock();
+        }
+        if(this.partitions!=null){
+            for(Block partition : this.partitions.values()){
+                this.rowProcessing(partition,outputMain,error);
+            }
+            this.partitions.clear();
+            this.bufferedRows=0;
+        }
+        if(this.executor!=null){
+            this.emitCompleted(0,outputMain,error);
+        }
+        if(this.configuration.getRuntimeSettings().doDistributedAssessment()&&this.summary!=null&&this.summary.getNumRecords()>0){
+            // Only the distributed assessment writes to the Summary output. Each group is
+            // summarized separately, the risks of the whole data are only known after the
+            // summaries of all workers have been merged by the pipeline, see RiskSummaryCombineFn
+            summary.emit(this.summary.toJson());
+            this.summary=new RiskSummary(this.summary.getQis());
+        }
+        if(LOGGER.isDebugEnabled()){
+            // The same statistics are available via JMX while the processor runs
+            if(this.configuration.getRuntimeSettings().getMode()== ParametersRuntime.Mode.ANONYMIZE){
+                LOGGER.debug("Fraction of suppressed cells: {}", this.statistics.getFractionOfSuppressedCells());
+            }
+            if(this.statistics.getPeakClassFootprint()>0){
+                LOGGER.debug("Off-heap memory for equivalence classes: {} bytes per block", this.statistics.getPeakClassFootprint());
+            }
+            for(ParametersStatistics.Phase phase : ParametersStatistics.Phase.values()){
+                LatencyHistogram latencies = this.statistics.getLatencies(phase);
+                if(latencies.getCount()>0){
+                    LOGGER.debug(String.format("%s: n=%d, mean=%.3f ms, p50=%.3f ms, p99=%.3f ms, max=%.3f ms", phase,
+                            latencies.getCount(), latencies.getMean()/1e6, latencies.getPercentile(50)/1e6,
+                            latencies.getPercentile(99)/1e6, latencies.getMax()/1e6));
+                }
+            }
         }
     }
 
@@ -117,8 +638,41 @@ public class ARXDeidentifierProcessor implements Serializable {
         // this is the symmetric method of the init() one,
         // release potential connections you created or data you cached
         // Note: if you don't need it you can delete it
+        if(monitor!=null){
+            // The bean is registered platform-wide, so it is removed first
+            monitor.unregister();
+            monitor=null;
+        }
         statistics = null;
         header = null;
-        buffer=null;
+        types = null;
+        // Buffers of blocks not passed on, e.g. after a failure, are unmapped right away
+        for(Block buffered : new Block[]{block,heldBack}){
+            if(buffered!=null){
+                buffered.getBuffer().release();
+            }
+        }
+        if(partitions!=null){
+            for(Block partition : partitions.values()){
+                partition.getBuffer().release();
+            }
+        }
+        block=null;
+        heldBack=null;
+        partitions=null;
+        qis=null;
+        transformer=null;
+        hierarchies=null;
+        blockSizes=null;
+        budget=null;
+        transformations=null;
+        if(executor!=null){
+            executor.shutdownNow();
+            executor=null;
+        }
+        completion=null;
+        pending=null;
+        searchMode=null;
+        summary=null;
     }
 }
\ No newline at end of file
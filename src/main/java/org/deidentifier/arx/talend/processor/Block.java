@@ -0,0 +1,125 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This class encapsulates a block while it is buffered, together with the
+ * risks assessed while buffering it.
+ * @author Florian Wiedner
+ */
+public class Block {
+    /** The rows of the block */
+    private final DataBuffer buffer;
+
+    /** The risks assessed while buffering, null if not assessed */
+    private final StreamingRiskAssessor assessor;
+
+    /** The time at which the oldest row has been buffered, as returned by {@link System#nanoTime()} */
+    private long started;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer The rows of the block
+     * @param assessor The risks assessed while buffering, null if not assessed
+     */
+    public Block(DataBuffer buffer, StreamingRiskAssessor assessor) {
+        this.buffer = buffer;
+        this.assessor = assessor;
+    }
+
+    /**
+     * Adds the last row of the buffer to the assessed risks, if any.
+     *
+     * @param qis The indices of the quasi-identifiers
+     */
+    public void assess(int[] qis) {
+        if (assessor != null) {
+            assessor.add(buffer, buffer.getNumRows() - 1, qis);
+        }
+    }
+
+    /**
+     * Returns a block with the rows of this block followed by the rows of the other
+     * block. If either block is assessed, the rows are assessed again for the merged
+     * block, as the assessed risks refer to the buffer of each block.
+     *
+     * @param other The other block
+     * @param qis The indices of the quasi-identifiers
+     * @return Block
+     */
+    public Block concat(Block other, int[] qis) {
+        DataBuffer merged = buffer.concat(other.buffer);
+        StreamingRiskAssessor assessed = null;
+        if (assessor != null || other.assessor != null) {
+            assessed = new StreamingRiskAssessor(qis.length);
+            for (int row = 0; row < merged.getNumRows(); row++) {
+                assessed.add(merged, row, qis);
+            }
+        }
+        Block result = new Block(merged, assessed);
+        result.setStarted(started);
+        return result;
+    }
+
+    /**
+     * Sets the time at which the oldest row has been buffered.
+     *
+     * @param started The time, as returned by {@link System#nanoTime()}
+     */
+    public void setStarted(long started) {
+        this.started = started;
+    }
+
+    /**
+     * Returns the age of the oldest row, i.e. the time for which it has been buffered.
+     *
+     * @param now The current time, as returned by {@link System#nanoTime()}
+     * @return long the time in nanoseconds, zero if the block is empty
+     */
+    public long getAge(long now) {
+        return getNumRows() == 0 ? 0L : now - started;
+    }
+
+    /**
+     * Returns the rows of the block.
+     *
+     * @return DataBuffer
+     */
+    public DataBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the risks assessed while buffering, null if not assessed.
+     *
+     * @return StreamingRiskAssessor
+     */
+    public StreamingRiskAssessor getAssessor() {
+        return assessor;
+    }
+
+    /**
+     * Returns the number of rows of the block.
+     *
+     * @return int
+     */
+    public int getNumRows() {
+        return buffer.getNumRows();
+    }
+}
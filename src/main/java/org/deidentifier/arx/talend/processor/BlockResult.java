@@ -0,0 +1,141 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This class encapsulates the result of processing a single block, until it is
+ * passed to the next step of the transformation.
+ * @author Florian Wiedner
+ */
+public class BlockResult {
+    /** The block as it has been buffered */
+    private final DataBuffer input;
+
+    /** The data to emit */
+    private final DataBuffer output;
+
+    /** The risks of the block, null when anonymizing */
+    private final ParametersRisk risk;
+
+    /** Whether the block is passed to the error channel */
+    private final boolean error;
+
+    /** The statistics of processing the block */
+    private final ParametersStatistics statistics;
+
+    /** The rows passed to the error channel, if routed separately, null otherwise */
+    private final DataBuffer rejected;
+
+    /**
+     * Constructor.
+     *
+     * @param input The block as it has been buffered
+     * @param output The data to emit
+     * @param risk The risks of the block, null when anonymizing
+     * @param error Whether the block is passed to the error channel
+     */
+    public BlockResult(DataBuffer input, DataBuffer output, ParametersRisk risk, boolean error) {
+        this(input, output, risk, error, new ParametersStatistics());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param input The block as it has been buffered
+     * @param output The data to emit
+     * @param risk The risks of the block, null when anonymizing
+     * @param error Whether the block is passed to the error channel
+     * @param statistics The statistics of processing the block
+     */
+    public BlockResult(DataBuffer input, DataBuffer output, ParametersRisk risk, boolean error, ParametersStatistics statistics) {
+        this(input, output, risk, error, statistics, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param input The block as it has been buffered
+     * @param output The data to emit
+     * @param risk The risks of the block, null when anonymizing
+     * @param error Whether the block is passed to the error channel
+     * @param statistics The statistics of processing the block
+     * @param rejected The rows passed to the error channel, if routed separately, null otherwise
+     */
+    public BlockResult(DataBuffer input, DataBuffer output, ParametersRisk risk, boolean error, ParametersStatistics statistics, DataBuffer rejected) {
+        this.input = input;
+        this.output = output;
+        this.risk = risk;
+        this.error = error;
+        this.statistics = statistics;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Returns the block as it has been buffered.
+     *
+     * @return DataBuffer
+     */
+    public DataBuffer getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the data to emit.
+     *
+     * @return DataBuffer
+     */
+    public DataBuffer getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the risks of the block, null when anonymizing.
+     *
+     * @return ParametersRisk
+     */
+    public ParametersRisk getRisk() {
+        return risk;
+    }
+
+    /**
+     * Returns whether the block is passed to the error channel.
+     *
+     * @return boolean
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * Returns the rows passed to the error channel, if routed separately, null otherwise.
+     *
+     * @return DataBuffer
+     */
+    public DataBuffer getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the statistics of processing the block.
+     *
+     * @return ParametersStatistics
+     */
+    public ParametersStatistics getStatistics() {
+        return statistics;
+    }
+}
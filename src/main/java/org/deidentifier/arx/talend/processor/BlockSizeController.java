@@ -0,0 +1,103 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This class adapts the size of the blocks to the time needed for processing
+ * recent blocks and to the free heap. It estimates the processing time per row
+ * as an exponentially weighted average and chooses the size for which a block
+ * is expected to take the target time, within the configured bounds. The size
+ * changes by at most a factor of two per block, and is halved if the free heap
+ * falls below a quarter of the maximum heap. Instances may be shared between threads.
+ * @author Florian Wiedner
+ */
+public class BlockSizeController {
+    /** The weight of the most recent block */
+    private static final double WEIGHT = 0.3d;
+
+    /** The fraction of the maximum heap below which blocks are made smaller */
+    private static final double MIN_FREE_HEAP = 0.25d;
+
+    /** The minimal block size */
+    private final int minimum;
+
+    /** The maximal block size */
+    private final int maximum;
+
+    /** The target processing time per block in nanoseconds */
+    private final double target;
+
+    /** The estimated processing time per row in nanoseconds, negative if unknown */
+    private double nanosPerRow = -1d;
+
+    /** The current block size */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param runtime ParametersRuntime
+     */
+    public BlockSizeController(ParametersRuntime runtime) {
+        this.minimum = Math.max(1, runtime.getMinBlockSize());
+        this.maximum = Math.max(this.minimum, runtime.getMaxBlockSize());
+        this.target = runtime.getTargetBlockSeconds() * 1000000000d;
+        this.size = clamp(runtime.getBlockSize());
+    }
+
+    /**
+     * Returns the size of the next block.
+     *
+     * @return int
+     */
+    public synchronized int getBlockSize() {
+        return size;
+    }
+
+    /**
+     * Adapts the block size to the time needed for processing a block.
+     *
+     * @param rows The number of rows of the block
+     * @param nanos The processing time in nanoseconds
+     */
+    public synchronized void record(int rows, long nanos) {
+        if (rows == 0) {
+            return;
+        }
+        double perRow = (double) nanos / rows;
+        nanosPerRow = nanosPerRow < 0d ? perRow : WEIGHT * perRow + (1d - WEIGHT) * nanosPerRow;
+        long next = nanosPerRow == 0d ? maximum : (long) (target / nanosPerRow);
+        next = Math.max(size / 2, Math.min(2L * size, next));
+        Runtime heap = Runtime.getRuntime();
+        long free = heap.maxMemory() - heap.totalMemory() + heap.freeMemory();
+        if (free < MIN_FREE_HEAP * heap.maxMemory()) {
+            next = Math.min(next, size / 2);
+        }
+        size = clamp(next);
+    }
+
+    /**
+     * Returns the size within the bounds.
+     *
+     * @param size The size
+     * @return int
+     */
+    private int clamp(long size) {
+        return (int) Math.max(minimum, Math.min(maximum, size));
+    }
+}
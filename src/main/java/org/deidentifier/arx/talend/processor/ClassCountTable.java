@@ -0,0 +1,302 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class implements an off-heap hash table, which counts tuples of integer codes
+ * of a fixed width. It uses open addressing with linear probing. Each slot holds the
+ * count, followed by the codes, and slots with a count of zero are empty. The slots
+ * are stored in direct buffers, which are split into segments of less than 2 GB.
+ * @author Florian Wiedner
+ */
+public class ClassCountTable {
+    /** The initial number of slots */
+    private static final long INITIAL_CAPACITY = 1L << 10;
+
+    /** The maximal fraction of occupied slots */
+    private static final double MAX_LOAD = 0.7d;
+
+    /** The maximal number of bytes of a segment */
+    private static final int MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    /** The number of codes per tuple */
+    private final int width;
+
+    /** The maximal number of bytes of a segment */
+    private final int maxSegmentBytes;
+
+    /** The number of bytes per slot */
+    private final int slotBytes;
+
+    /** The number of slots, a power of two */
+    private long capacity;
+
+    /** The number of bits addressing a slot within a segment */
+    private int segmentBits;
+
+    /** The segments */
+    private ByteBuffer[] segments;
+
+    /** The number of distinct tuples */
+    private long size;
+
+    /** The sum of all counts */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param width The number of codes per tuple
+     */
+    public ClassCountTable(int width) {
+        this(width, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param width The number of codes per tuple
+     * @param expected The expected number of distinct tuples
+     */
+    public ClassCountTable(int width, long expected) {
+        this(width, expected, MAX_SEGMENT_BYTES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param width The number of codes per tuple
+     * @param expected The expected number of distinct tuples
+     * @param maxSegmentBytes The maximal number of bytes of a segment
+     */
+    ClassCountTable(int width, long expected, int maxSegmentBytes) {
+        this.width = width;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.slotBytes = Long.BYTES + width * Integer.BYTES;
+        long capacity = INITIAL_CAPACITY;
+        while (capacity * MAX_LOAD < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Adds the given count to a tuple.
+     *
+     * @param codes The tuple
+     * @param count The count, greater than zero
+     */
+    public void add(int[] codes, long count) {
+        if (count <= 0L) {
+            throw new IllegalArgumentException("Count must be greater than zero: " + count);
+        }
+        if (size + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        long slot = find(codes);
+        ByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+        int offset = getOffset(slot);
+        long current = segment.getLong(offset);
+        if (current == 0L) {
+            for (int i = 0; i < width; i++) {
+                segment.putInt(offset + Long.BYTES + i * Integer.BYTES, codes[i]);
+            }
+            size++;
+        }
+        segment.putLong(offset, current + count);
+        total += count;
+    }
+
+    /**
+     * Returns the count of a tuple, zero if it has not been added.
+     *
+     * @param codes The tuple
+     * @return long
+     */
+    public long get(int[] codes) {
+        long slot = find(codes);
+        return segments[(int) (slot >>> segmentBits)].getLong(getOffset(slot));
+    }
+
+    /**
+     * Returns the number of slots. Slots are numbered from zero.
+     *
+     * @return long
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the count stored in a slot, zero if the slot is empty.
+     *
+     * @param slot The slot
+     * @return long
+     */
+    public long getCount(long slot) {
+        return segments[(int) (slot >>> segmentBits)].getLong(getOffset(slot));
+    }
+
+    /**
+     * Copies the tuple stored in a slot.
+     *
+     * @param slot The slot
+     * @param target The array to copy the tuple to
+     */
+    public void getCodes(long slot, int[] target) {
+        ByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+        int offset = getOffset(slot);
+        for (int i = 0; i < width; i++) {
+            target[i] = segment.getInt(offset + Long.BYTES + i * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Returns the number of distinct tuples.
+     *
+     * @return long
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the sum of all counts.
+     *
+     * @return long
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of bytes allocated off-heap.
+     *
+     * @return long
+     */
+    public long getFootprint() {
+        return capacity * slotBytes;
+    }
+
+    /**
+     * Returns the slot containing the tuple, or the empty slot at which it would be inserted.
+     *
+     * @param codes The tuple
+     * @return long
+     */
+    private long find(int[] codes) {
+        long mask = capacity - 1;
+        long slot = hash(codes) & mask;
+        while (true) {
+            ByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+            int offset = getOffset(slot);
+            if (segment.getLong(offset) == 0L || equals(segment, offset, codes)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns whether a slot contains the tuple.
+     *
+     * @param segment The segment
+     * @param offset The offset of the slot
+     * @param codes The tuple
+     * @return boolean
+     */
+    private boolean equals(ByteBuffer segment, int offset, int[] codes) {
+        for (int i = 0; i < width; i++) {
+            if (segment.getInt(offset + Long.BYTES + i * Integer.BYTES) != codes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of a slot within its segment.
+     *
+     * @param slot The slot
+     * @return int
+     */
+    private int getOffset(long slot) {
+        return (int) (slot & ((1L << segmentBits) - 1)) * slotBytes;
+    }
+
+    /**
+     * Allocates empty segments for the given number of slots.
+     *
+     * @param capacity The number of slots, a power of two
+     */
+    private void allocate(long capacity) {
+        int bits = 0;
+        while ((2L << bits) * slotBytes <= maxSegmentBytes && (1L << bits) < capacity) {
+            bits++;
+        }
+        this.capacity = capacity;
+        this.segmentBits = bits;
+        this.segments = new ByteBuffer[(int) (capacity >>> bits)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect((1 << bits) * slotBytes).order(ByteOrder.nativeOrder());
+        }
+        this.size = 0L;
+        this.total = 0L;
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts all tuples.
+     */
+    private void grow() {
+        ByteBuffer[] segments = this.segments;
+        int segmentBits = this.segmentBits;
+        long capacity = this.capacity;
+        allocate(capacity << 1);
+        int[] codes = new int[width];
+        for (long slot = 0; slot < capacity; slot++) {
+            ByteBuffer segment = segments[(int) (slot >>> segmentBits)];
+            int offset = (int) (slot & ((1L << segmentBits) - 1)) * slotBytes;
+            long count = segment.getLong(offset);
+            if (count != 0L) {
+                for (int i = 0; i < width; i++) {
+                    codes[i] = segment.getInt(offset + Long.BYTES + i * Integer.BYTES);
+                }
+                add(codes, count);
+            }
+        }
+    }
+
+    /**
+     * Returns the hash code of a tuple.
+     *
+     * @param codes The tuple
+     * @return long
+     */
+    private static long hash(int[] codes) {
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int code : codes) {
+            hash = (hash ^ code) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        hash *= 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 29);
+    }
+}
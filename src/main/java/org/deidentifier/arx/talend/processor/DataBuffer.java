@@ -0,0 +1,977 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+import org.talend.sdk.component.api.record.Schema;
+
+/**
+ * This class implements a column-oriented buffer for the rows of a block. By default,
+ * each column is stored as chunks of integer codes, which refer to a dictionary of
+ * distinct values per column. Rows are only materialised on demand and the materialised
+ * rows reference the dictionary entries, so that no additional strings are created.
+ * <p>
+ * Columns of type INT, LONG, FLOAT, DOUBLE and BOOLEAN can instead be stored in their
+ * native form, as chunks of primitive values. Such columns are only converted to strings
+ * when a string is requested. Dates are dictionary-encoded, so that their zone and
+ * precision are kept.
+ * <p>
+ * If a spill directory is given, the chunks are moved into memory-mapped segment files
+ * as soon as the chunks and dictionaries held on heap exceed the given threshold. Then,
+ * dictionaries larger than a chunk of codes, e.g. of identifiers or free text, are moved
+ * into a {@link MappedDictionary} as well. The segment files are unmapped and deleted
+ * when the buffer is released.
+ * @author Florian Wiedner
+ */
+public class DataBuffer {
+    /** Number of rows stored per chunk of a column */
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    /** The header */
+    private final String[] header;
+
+    /** The type of each column, STRING for dictionary-encoded columns */
+    private final Schema.Type[] types;
+
+    /** The columns */
+    private final Column[] columns;
+
+    /** The number of rows */
+    private int rows;
+
+    /** The directory for segment files, null if spilling is disabled */
+    private final File spillDirectory;
+
+    /** The number of bytes of chunks which may be held on heap */
+    private final long spillThreshold;
+
+    /** The index of the first chunk held on heap */
+    private int firstHeapChunk;
+
+    /** The memory-mapped segments of this buffer */
+    private final MappedSegments segments;
+
+    /**
+     * Constructor.
+     *
+     * @param header The header
+     */
+    public DataBuffer(String[] header) {
+        this(header, null, null, 0L);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param header The header
+     * @param spillDirectory The directory for segment files, null to disable spilling
+     * @param spillThreshold The number of bytes of chunks which may be held on heap
+     */
+    public DataBuffer(String[] header, File spillDirectory, long spillThreshold) {
+        this(header, null, spillDirectory, spillThreshold);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param header The header
+     * @param types The type of each column, null to dictionary-encode all columns
+     * @param spillDirectory The directory for segment files, null to disable spilling
+     * @param spillThreshold The number of bytes of chunks which may be held on heap
+     */
+    public DataBuffer(String[] header, Schema.Type[] types, File spillDirectory, long spillThreshold) {
+        this.header = header;
+        this.types = new Schema.Type[header.length];
+        this.columns = new Column[header.length];
+        for (int i = 0; i < header.length; i++) {
+            boolean typed = types != null && types[i] != null && isTyped(types[i]);
+            this.types[i] = typed ? types[i] : Schema.Type.STRING;
+            this.columns[i] = typed ? new TypedColumn(types[i]) : new DictionaryColumn();
+        }
+        this.rows = 0;
+        this.spillDirectory = spillDirectory;
+        this.spillThreshold = spillThreshold;
+        this.firstHeapChunk = 0;
+        this.segments = new MappedSegments(spillDirectory);
+    }
+
+    /**
+     * Constructor for buffers sharing columns with other buffers.
+     *
+     * @param template The buffer to take the header and settings from
+     * @param types The types of the columns
+     * @param columns The columns
+     */
+    private DataBuffer(DataBuffer template, Schema.Type[] types, Column[] columns) {
+        this.header = template.header;
+        this.types = types;
+        this.columns = columns;
+        this.rows = template.rows;
+        this.spillDirectory = template.spillDirectory;
+        this.spillThreshold = template.spillThreshold;
+        this.firstHeapChunk = template.firstHeapChunk;
+        this.segments = new MappedSegments(spillDirectory);
+    }
+
+    /**
+     * Returns whether values of the given type can be stored in their native form.
+     *
+     * @param type The type
+     * @return boolean
+     */
+    public static boolean isTyped(Schema.Type type) {
+        switch (type) {
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case BOOLEAN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns an empty buffer with the same header and types, which spills like this buffer.
+     *
+     * @return DataBuffer
+     */
+    public DataBuffer newBuffer() {
+        return new DataBuffer(header, types, spillDirectory, spillThreshold);
+    }
+
+    /**
+     * Returns an empty buffer with the given header, which spills like this buffer.
+     * All columns of the new buffer are dictionary-encoded.
+     *
+     * @param header The header
+     * @return DataBuffer
+     */
+    public DataBuffer newBuffer(String[] header) {
+        return new DataBuffer(header, null, spillDirectory, spillThreshold);
+    }
+
+    /**
+     * Returns a buffer in which the given columns are replaced by the columns of the
+     * other buffer. All other columns are shared with this buffer and not copied.
+     * No further rows may be added to either buffer afterwards. Releasing the returned
+     * buffer releases both buffers.
+     *
+     * @param indices The indices of the columns to replace
+     * @param replacement The buffer containing the replacement columns, in the given order
+     * @return DataBuffer
+     */
+    public DataBuffer replaceColumns(int[] indices, DataBuffer replacement) {
+        if (replacement.rows != this.rows || replacement.columns.length != indices.length) {
+            throw new IllegalArgumentException("Replacement does not match the buffer");
+        }
+        Column[] columns = this.columns.clone();
+        Schema.Type[] types = this.types.clone();
+        for (int i = 0; i < indices.length; i++) {
+            columns[indices[i]] = replacement.columns[i];
+            types[indices[i]] = replacement.types[i];
+        }
+        DataBuffer result = new DataBuffer(this, types, columns);
+        result.segments.share(this.segments);
+        result.segments.share(replacement.segments);
+        return result;
+    }
+
+    /**
+     * Returns whether this buffer shares the given column with the other buffer.
+     *
+     * @param other The other buffer
+     * @param column The column
+     * @return boolean
+     */
+    public boolean isShared(DataBuffer other, int column) {
+        return this.columns[column] == other.columns[column];
+    }
+
+    /**
+     * Adds a row to the buffer. Values of columns stored in their native form are parsed.
+     *
+     * @param row The row, one value per column of the header
+     */
+    public void add(String[] row) {
+        for (int i = 0; i < columns.length; i++) {
+            setString(i, row[i]);
+        }
+        next();
+    }
+
+    /**
+     * Adds a row of another buffer with the same header. Values of columns stored in
+     * their native form in both buffers are copied without conversion.
+     *
+     * @param source The other buffer
+     * @param row The row of the other buffer
+     */
+    public void add(DataBuffer source, int row) {
+        for (int i = 0; i < columns.length; i++) {
+            if (source.isNull(row, i)) {
+                setNull(i);
+            } else if (columns[i] instanceof TypedColumn && source.columns[i] instanceof TypedColumn) {
+                setLong(i, source.getLong(row, i));
+            } else {
+                setString(i, source.get(row, i));
+            }
+        }
+        next();
+    }
+
+    /**
+     * Returns a buffer containing the given rows of this buffer.
+     *
+     * @param from The first row, inclusive
+     * @param to The last row, exclusive
+     * @return DataBuffer
+     */
+    public DataBuffer subset(int from, int to) {
+        DataBuffer result = newBuffer();
+        for (int row = from; row < to; row++) {
+            result.add(this, row);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a buffer containing the rows of this buffer, followed by the rows
+     * of the other buffer with the same header.
+     *
+     * @param other The other buffer
+     * @return DataBuffer
+     */
+    public DataBuffer concat(DataBuffer other) {
+        DataBuffer result = subset(0, rows);
+        for (int row = 0; row < other.rows; row++) {
+            result.add(other, row);
+        }
+        return result;
+    }
+
+    /**
+     * Sets a value of the row currently being added. Values of columns stored in
+     * their native form are parsed.
+     *
+     * @param column The column
+     * @param value The value
+     */
+    public void setString(int column, String value) {
+        columns[column].setString(rows / CHUNK_SIZE, rows % CHUNK_SIZE, value);
+    }
+
+    /**
+     * Sets a value of the row currently being added.
+     *
+     * @param column The column
+     * @param value The value
+     */
+    public void setLong(int column, long value) {
+        typed(column).setLong(rows / CHUNK_SIZE, rows % CHUNK_SIZE, value);
+    }
+
+    /**
+     * Sets a value of the row currently being added.
+     *
+     * @param column The column
+     * @param value The value
+     */
+    public void setDouble(int column, double value) {
+        typed(column).setLong(rows / CHUNK_SIZE, rows % CHUNK_SIZE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Sets a value of the row currently being added.
+     *
+     * @param column The column
+     * @param value The value
+     */
+    public void setBoolean(int column, boolean value) {
+        typed(column).setLong(rows / CHUNK_SIZE, rows % CHUNK_SIZE, value ? 1L : 0L);
+    }
+
+    /**
+     * Sets a value of the row currently being added to null.
+     *
+     * @param column The column
+     */
+    public void setNull(int column) {
+        columns[column].setNull(rows / CHUNK_SIZE, rows % CHUNK_SIZE);
+    }
+
+    /**
+     * Completes the row currently being added.
+     */
+    public void next() {
+        rows++;
+        if (spillDirectory != null && rows % CHUNK_SIZE == 0 && getHeapSize() > spillThreshold) {
+            spill(rows / CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Returns the estimated number of bytes of the chunks and dictionaries held on heap.
+     *
+     * @return long
+     */
+    public long getHeapSize() {
+        long bytes = ((rows + CHUNK_SIZE - 1) / CHUNK_SIZE - firstHeapChunk) * getChunkBytes();
+        for (Column column : columns) {
+            bytes += column.getDictionaryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the code of a cell of a dictionary-encoded column.
+     *
+     * @param row The row
+     * @param column The column
+     * @return int
+     */
+    public int getCode(int row, int column) {
+        return dictionary(column).getCode(row / CHUNK_SIZE, row % CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the value of a cell of a column stored in its native form. Floating
+     * point values are returned as their raw bits and booleans as 0 or 1.
+     *
+     * @param row The row
+     * @param column The column
+     * @return long
+     */
+    public long getLong(int row, int column) {
+        return typed(column).getLong(row / CHUNK_SIZE, row % CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the value of a cell. Null values of columns stored in their native
+     * form are returned as {@link OperationDataTransformer#MAGIC_NULL_VALUE}.
+     *
+     * @param row The row
+     * @param column The column
+     * @return String
+     */
+    public String get(int row, int column) {
+        return columns[column].getString(row / CHUNK_SIZE, row % CHUNK_SIZE);
+    }
+
+    /**
+     * Returns whether a cell is null.
+     *
+     * @param row The row
+     * @param column The column
+     * @return boolean
+     */
+    public boolean isNull(int row, int column) {
+        return columns[column].isNull(row / CHUNK_SIZE, row % CHUNK_SIZE);
+    }
+
+    /**
+     * Returns the distinct values of a dictionary-encoded column, indexed by their code.
+     *
+     * @param column The column
+     * @return String[]
+     */
+    public String[] getDistinctValues(int column) {
+        DictionaryColumn dictionary = dictionary(column);
+        String[] values = new String[dictionary.getNumValues()];
+        for (int code = 0; code < values.length; code++) {
+            values[code] = dictionary.getValue(code);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of distinct values of a dictionary-encoded column.
+     *
+     * @param column The column
+     * @return int
+     */
+    public int getNumDistinctValues(int column) {
+        return dictionary(column).getNumValues();
+    }
+
+    /**
+     * Returns the distinct value of a dictionary-encoded column with the given code.
+     *
+     * @param column The column
+     * @param code The code
+     * @return String
+     */
+    public String getDistinctValue(int column, int code) {
+        return dictionary(column).getValue(code);
+    }
+
+    /**
+     * Returns the index of a column, or -1 if there is no such column.
+     *
+     * @param name The name of the column
+     * @return int
+     */
+    public int getColumnIndexOf(String name) {
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the header.
+     *
+     * @return String[]
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the type of each column, STRING for dictionary-encoded columns.
+     *
+     * @return Schema.Type[]
+     */
+    public Schema.Type[] getTypes() {
+        return types;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return int
+     */
+    public int getNumColumns() {
+        return header.length;
+    }
+
+    /**
+     * Returns the number of rows, without the header.
+     *
+     * @return int
+     */
+    public int getNumRows() {
+        return rows;
+    }
+
+    /**
+     * Materialises a row. For dictionary-encoded columns, the returned array
+     * references the dictionary entries.
+     *
+     * @param row The row
+     * @return String[]
+     */
+    public String[] getRow(int row) {
+        String[] result = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            result[i] = get(row, i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an iterator over the header, followed by all rows. This is
+     * the format expected by ARX.
+     *
+     * @return Iterator<String[]>
+     */
+    public Iterator<String[]> iterator() {
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        return iterator(indices);
+    }
+
+    /**
+     * Returns an iterator over the header, followed by all rows, projected
+     * onto the given columns.
+     *
+     * @param indices The indices of the columns
+     * @return Iterator<String[]>
+     */
+    public Iterator<String[]> iterator(final int[] indices) {
+        final String[] projected = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            projected[i] = header[indices[i]];
+        }
+        return new Iterator<String[]>() {
+            /** The next row, -1 denotes the header */
+            private int next = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next < rows;
+            }
+
+            @Override
+            public String[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String[] result = projected;
+                if (next != -1) {
+                    result = new String[indices.length];
+                    for (int i = 0; i < indices.length; i++) {
+                        result[i] = get(next, indices[i]);
+                    }
+                }
+                next++;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the dictionary-encoded column.
+     *
+     * @param column The column
+     * @return DictionaryColumn
+     */
+    private DictionaryColumn dictionary(int column) {
+        if (!(columns[column] instanceof DictionaryColumn)) {
+            throw new IllegalArgumentException("Column " + header[column] + " is not dictionary-encoded");
+        }
+        return (DictionaryColumn) columns[column];
+    }
+
+    /**
+     * Returns the column stored in its native form.
+     *
+     * @param column The column
+     * @return TypedColumn
+     */
+    private TypedColumn typed(int column) {
+        if (!(columns[column] instanceof TypedColumn)) {
+            throw new IllegalArgumentException("Column " + header[column] + " is dictionary-encoded");
+        }
+        return (TypedColumn) columns[column];
+    }
+
+    /**
+     * Returns the number of bytes of a chunk of all columns.
+     *
+     * @return long
+     */
+    private long getChunkBytes() {
+        long bytes = 0L;
+        for (Column column : columns) {
+            bytes += column.getChunkBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Moves all complete chunks held on heap and all large dictionaries into
+     * memory-mapped segment files.
+     *
+     * @param end The index of the first chunk not to move
+     */
+    private void spill(int end) {
+        for (Column column : columns) {
+            if (column.getDictionaryBytes() > column.getChunkBytes()) {
+                column.spillDictionary(segments::map, segments::unmap);
+            }
+        }
+        long chunkBytes = getChunkBytes();
+        int chunksPerSegment = (int) Math.max(1L, Integer.MAX_VALUE / chunkBytes);
+        while (firstHeapChunk < end) {
+            int chunks = Math.min(chunksPerSegment, end - firstHeapChunk);
+            MappedByteBuffer segment = segments.map(chunks * chunkBytes);
+            int position = 0;
+            for (int chunk = firstHeapChunk; chunk < firstHeapChunk + chunks; chunk++) {
+                for (Column column : columns) {
+                    ByteBuffer slice = segment.duplicate();
+                    slice.position(position);
+                    slice.limit(position + (int) column.getChunkBytes());
+                    column.spill(chunk, slice.slice());
+                    position += column.getChunkBytes();
+                }
+            }
+            firstHeapChunk += chunks;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the memory-mapped segment files of this buffer,
+     * including those of buffers whose columns it shares.
+     *
+     * @return long
+     */
+    public long getMappedBytes() {
+        return segments.getMappedBytes();
+    }
+
+    /**
+     * Unmaps and deletes the segment files of this buffer and of the buffers whose
+     * columns it shares. The buffer must not be accessed afterwards. Buffers which
+     * have not been spilled are left to the garbage collector as before.
+     */
+    public void release() {
+        segments.release();
+    }
+
+    /**
+     * A column, stored in chunks.
+     */
+    private abstract static class Column {
+        /**
+         * Stores a value, parsing it if required.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @param value The value
+         */
+        abstract void setString(int chunk, int offset, String value);
+
+        /**
+         * Stores a null value.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         */
+        abstract void setNull(int chunk, int offset);
+
+        /**
+         * Returns a value as a string.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @return String
+         */
+        abstract String getString(int chunk, int offset);
+
+        /**
+         * Returns whether a value is null.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @return boolean
+         */
+        abstract boolean isNull(int chunk, int offset);
+
+        /**
+         * Returns the number of bytes of a chunk.
+         *
+         * @return long
+         */
+        abstract long getChunkBytes();
+
+        /**
+         * Copies a chunk into the given buffer, which then replaces the chunk.
+         *
+         * @param chunk The chunk
+         * @param target The buffer
+         */
+        abstract void spill(int chunk, ByteBuffer target);
+
+        /**
+         * Returns the estimated number of bytes of the dictionary held on heap.
+         *
+         * @return long
+         */
+        long getDictionaryBytes() {
+            return 0L;
+        }
+
+        /**
+         * Moves the dictionary into storage obtained from the allocator.
+         *
+         * @param allocator The allocator
+         * @param releaser Releases storage which is no longer used
+         */
+        void spillDictionary(LongFunction<? extends ByteBuffer> allocator, Consumer<? super ByteBuffer> releaser) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * A dictionary-encoded column.
+     */
+    private static class DictionaryColumn extends Column {
+        /** Estimated bytes per entry of the dictionary on heap, in addition to the characters */
+        private static final long ENTRY_BYTES = 96L;
+
+        /** Codes of the values, null if the dictionary has been spilled */
+        private Map<String, Integer> codes = new HashMap<>();
+
+        /** Values, indexed by their code, null if the dictionary has been spilled */
+        private List<String> values = new ArrayList<>();
+
+        /** The spilled dictionary, null if the dictionary is held on heap */
+        private MappedDictionary mapped;
+
+        /** The estimated number of bytes of the dictionary on heap */
+        private long dictionaryBytes;
+
+        /** Chunks of codes, either on heap or memory-mapped */
+        private final List<IntBuffer> chunks = new ArrayList<>();
+
+        @Override
+        void setString(int chunk, int offset, String value) {
+            int code;
+            if (mapped != null) {
+                code = mapped.getCode(value);
+            } else {
+                Integer existing = codes.get(value);
+                if (existing == null) {
+                    existing = values.size();
+                    codes.put(value, existing);
+                    values.add(value);
+                    dictionaryBytes += ENTRY_BYTES + (value == null ? 0L : 2L * value.length());
+                }
+                code = existing;
+            }
+            if (chunk == chunks.size()) {
+                chunks.add(IntBuffer.allocate(CHUNK_SIZE));
+            }
+            chunks.get(chunk).put(offset, code);
+        }
+
+        @Override
+        void setNull(int chunk, int offset) {
+            setString(chunk, offset, OperationDataTransformer.MAGIC_NULL_VALUE);
+        }
+
+        @Override
+        String getString(int chunk, int offset) {
+            return getValue(getCode(chunk, offset));
+        }
+
+        @Override
+        boolean isNull(int chunk, int offset) {
+            String value = getString(chunk, offset);
+            return value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE);
+        }
+
+        @Override
+        long getChunkBytes() {
+            return CHUNK_SIZE * 4L;
+        }
+
+        @Override
+        void spill(int chunk, ByteBuffer target) {
+            IntBuffer codes = target.asIntBuffer();
+            codes.put(chunks.get(chunk).array());
+            chunks.set(chunk, codes);
+        }
+
+        @Override
+        long getDictionaryBytes() {
+            return dictionaryBytes;
+        }
+
+        @Override
+        void spillDictionary(LongFunction<? extends ByteBuffer> allocator, Consumer<? super ByteBuffer> releaser) {
+            if (mapped != null) {
+                return;
+            }
+            // Values are unique, so they keep their codes
+            MappedDictionary dictionary = new MappedDictionary(allocator, releaser);
+            for (String value : values) {
+                dictionary.getCode(value);
+            }
+            mapped = dictionary;
+            codes = null;
+            values = null;
+            dictionaryBytes = 0L;
+        }
+
+        /**
+         * Returns the number of values.
+         *
+         * @return int
+         */
+        private int getNumValues() {
+            return mapped != null ? mapped.size() : values.size();
+        }
+
+        /**
+         * Returns the value of a code.
+         *
+         * @param code The code
+         * @return String
+         */
+        private String getValue(int code) {
+            return mapped != null ? mapped.get(code) : values.get(code);
+        }
+
+        /**
+         * Returns a code.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @return int
+         */
+        private int getCode(int chunk, int offset) {
+            return chunks.get(chunk).get(offset);
+        }
+    }
+
+    /**
+     * A column storing values in their native form. All values are represented
+     * as longs, together with a flag for null values.
+     */
+    private static class TypedColumn extends Column {
+        /** The type */
+        private final Schema.Type type;
+
+        /** Chunks of values, either on heap or memory-mapped */
+        private final List<LongBuffer> chunks = new ArrayList<>();
+
+        /** Chunks of null flags, either on heap or memory-mapped */
+        private final List<ByteBuffer> nulls = new ArrayList<>();
+
+        /**
+         * Constructor.
+         *
+         * @param type The type
+         */
+        private TypedColumn(Schema.Type type) {
+            this.type = type;
+        }
+
+        @Override
+        void setString(int chunk, int offset, String value) {
+            if (value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE)) {
+                setNull(chunk, offset);
+                return;
+            }
+            switch (type) {
+                case INT:
+                case LONG:
+                    setLong(chunk, offset, Long.parseLong(value));
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    setLong(chunk, offset, Double.doubleToRawLongBits(Double.parseDouble(value)));
+                    break;
+                case BOOLEAN:
+                    setLong(chunk, offset, Boolean.parseBoolean(value) ? 1L : 0L);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported type: " + type);
+            }
+        }
+
+        @Override
+        void setNull(int chunk, int offset) {
+            ensure(chunk);
+            chunks.get(chunk).put(offset, 0L);
+            nulls.get(chunk).put(offset, (byte) 1);
+        }
+
+        /**
+         * Stores a value.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @param value The value
+         */
+        void setLong(int chunk, int offset, long value) {
+            ensure(chunk);
+            chunks.get(chunk).put(offset, value);
+            nulls.get(chunk).put(offset, (byte) 0);
+        }
+
+        /**
+         * Returns a value.
+         *
+         * @param chunk The chunk
+         * @param offset The offset in the chunk
+         * @return long
+         */
+        long getLong(int chunk, int offset) {
+            return chunks.get(chunk).get(offset);
+        }
+
+        @Override
+        String getString(int chunk, int offset) {
+            if (isNull(chunk, offset)) {
+                return OperationDataTransformer.MAGIC_NULL_VALUE;
+            }
+            long value = getLong(chunk, offset);
+            switch (type) {
+                case INT:
+                    return Integer.toString((int) value);
+                case LONG:
+                    return Long.toString(value);
+                case FLOAT:
+                    return Float.toString((float) Double.longBitsToDouble(value));
+                case DOUBLE:
+                    return Double.toString(Double.longBitsToDouble(value));
+                case BOOLEAN:
+                    return Boolean.toString(value != 0L);
+                default:
+                    throw new IllegalStateException("Unsupported type: " + type);
+            }
+        }
+
+        @Override
+        boolean isNull(int chunk, int offset) {
+            return nulls.get(chunk).get(offset) != 0;
+        }
+
+        @Override
+        long getChunkBytes() {
+            return CHUNK_SIZE * 9L;
+        }
+
+        @Override
+        void spill(int chunk, ByteBuffer target) {
+            ByteBuffer values = target.duplicate();
+            values.limit(CHUNK_SIZE * 8);
+            LongBuffer longs = values.slice().asLongBuffer();
+            longs.put(chunks.get(chunk).array());
+            chunks.set(chunk, longs);
+            ByteBuffer flags = target.duplicate();
+            flags.position(CHUNK_SIZE * 8);
+            flags = flags.slice();
+            flags.put(nulls.get(chunk).array());
+            nulls.set(chunk, flags);
+        }
+
+        /**
+         * Makes sure that the chunk exists.
+         *
+         * @param chunk The chunk
+         */
+        private void ensure(int chunk) {
+            if (chunk == chunks.size()) {
+                chunks.add(LongBuffer.allocate(CHUNK_SIZE));
+                nulls.add(ByteBuffer.allocate(CHUNK_SIZE));
+            }
+        }
+    }
+}
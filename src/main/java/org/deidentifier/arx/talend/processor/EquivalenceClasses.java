@@ -0,0 +1,291 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class counts the sizes of the equivalence classes defined by the
+ * quasi-identifiers. Classes are identified by the codes of their values and
+ * counted in an off-heap {@link ClassCountTable}.
+ * By default, null values are treated like any other value, which overestimates
+ * the risks compared to matching them as wildcards. Codes of {@link #WILDCARD}
+ * are matched as wildcards by {@link #getRisksWildcard(double)}.
+ * @author Florian Wiedner
+ */
+public class EquivalenceClasses {
+    /** The code matching any other code */
+    public static final int WILDCARD = -1;
+
+    /** The maximal number of quasi-identifiers */
+    public static final int MAX_QIS = Long.SIZE;
+
+    /** The number of quasi-identifiers */
+    private final int width;
+
+    /** The sizes of the classes */
+    private final ClassCountTable sizes;
+
+    /**
+     * Constructor.
+     *
+     * @param width The number of quasi-identifiers, at most 64
+     */
+    public EquivalenceClasses(int width) {
+        if (width > MAX_QIS) {
+            throw new IllegalArgumentException("At most " + MAX_QIS + " quasi-identifiers are supported");
+        }
+        this.width = width;
+        this.sizes = new ClassCountTable(width);
+    }
+
+    /**
+     * Counts the equivalence classes of the given columns of the buffer.
+     *
+     * @param data The buffer
+     * @param qis The indices of the quasi-identifiers
+     * @return EquivalenceClasses
+     */
+    public static EquivalenceClasses of(DataBuffer data, int[] qis) {
+        EquivalenceClasses result = new EquivalenceClasses(qis.length);
+        int[] codes = new int[qis.length];
+        for (int row = 0; row < data.getNumRows(); row++) {
+            for (int i = 0; i < qis.length; i++) {
+                codes[i] = data.getCode(row, qis[i]);
+            }
+            result.add(codes);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param codes The codes of the values of the quasi-identifiers
+     */
+    public void add(int[] codes) {
+        sizes.add(codes, 1L);
+    }
+
+    /**
+     * Adds records with the same values.
+     *
+     * @param codes The codes of the values of the quasi-identifiers
+     * @param count The number of records
+     */
+    public void add(int[] codes, long count) {
+        sizes.add(codes, count);
+    }
+
+    /**
+     * Returns the number of classes.
+     *
+     * @return long
+     */
+    public long getNumClasses() {
+        return sizes.size();
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return long
+     */
+    public long getNumRecords() {
+        return sizes.getTotal();
+    }
+
+    /**
+     * Returns the number of bytes allocated off-heap for counting the classes.
+     *
+     * @return long
+     */
+    public long getFootprint() {
+        return sizes.getFootprint();
+    }
+
+    /**
+     * Returns the sample-based risks. Records in classes smaller than the given
+     * size are considered to be at risk.
+     *
+     * @param k The minimal class size
+     * @return ParametersRisk
+     */
+    public ParametersRisk getRisks(int k) {
+        long records = sizes.getTotal();
+        long minimum = Long.MAX_VALUE;
+        long atRisk = 0;
+        for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+            long size = sizes.getCount(slot);
+            if (size != 0L) {
+                minimum = Math.min(minimum, size);
+                atRisk += size < k ? size : 0;
+            }
+        }
+        ParametersRisk result = new ParametersRisk();
+        result.setHighestRisk(records == 0 ? 0d : 1d / minimum);
+        result.setAverageRisk(records == 0 ? 0d : (double) sizes.size() / records);
+        result.setRecordsAtRisk(records == 0 ? 0d : (double) atRisk / records);
+        return result;
+    }
+
+    /**
+     * Returns the sample-based risks, matching codes of {@link #WILDCARD} with any
+     * other code. The risk of a record is the inverse of the number of records it
+     * matches. Records with a risk above the given threshold are considered to be
+     * at risk.
+     *
+     * @param threshold The highest acceptable risk
+     * @return ParametersRisk
+     * @see #getMatchesWildcard()
+     */
+    public ParametersRisk getRisksWildcard(double threshold) {
+        return getRisksWildcard(getMatchesWildcard(), threshold);
+    }
+
+    /**
+     * Returns the sample-based risks for the given numbers of matching records,
+     * as returned by {@link #getMatchesWildcard()}.
+     *
+     * @param matches The number of records matched by each class
+     * @param threshold The highest acceptable risk
+     * @return ParametersRisk
+     */
+    public ParametersRisk getRisksWildcard(ClassCountTable matches, double threshold) {
+        long records = sizes.getTotal();
+        int[] codes = new int[width];
+        double highest = 0d;
+        double average = 0d;
+        long atRisk = 0;
+        for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+            long size = sizes.getCount(slot);
+            if (size == 0L) {
+                continue;
+            }
+            sizes.getCodes(slot, codes);
+            double risk = 1d / matches.get(codes);
+            highest = Math.max(highest, risk);
+            average += risk * size;
+            atRisk += risk > threshold ? size : 0;
+        }
+        ParametersRisk result = new ParametersRisk();
+        result.setHighestRisk(highest);
+        result.setAverageRisk(records == 0 ? 0d : average / records);
+        result.setRecordsAtRisk(records == 0 ? 0d : (double) atRisk / records);
+        return result;
+    }
+
+    /**
+     * Returns for each class the number of records it matches, matching codes of
+     * {@link #WILDCARD} with any other code. Classes are grouped by the columns in
+     * which they contain wildcards. For each pair of groups, the classes of one group
+     * are projected onto the columns without wildcards in either group and looked up
+     * in the projection of the other group. The effort thus grows with the number of
+     * groups times the number of classes, and only the projection of a single group
+     * is held at a time.
+     *
+     * @return ClassCountTable
+     */
+    public ClassCountTable getMatchesWildcard() {
+        int[] codes = new int[width];
+        int[] key = new int[width];
+        // Slots of the classes, per set of columns containing wildcards
+        Map<Long, SlotList> groups = new LinkedHashMap<>();
+        for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+            if (sizes.getCount(slot) != 0L) {
+                sizes.getCodes(slot, codes);
+                groups.computeIfAbsent(getWildcards(codes), wildcards -> new SlotList()).add(slot);
+            }
+        }
+        ClassCountTable result = new ClassCountTable(width, sizes.size());
+        for (Map.Entry<Long, SlotList> other : groups.entrySet()) {
+            for (Map.Entry<Long, SlotList> own : groups.entrySet()) {
+                long columns = other.getKey() | own.getKey();
+                SlotList slots = other.getValue();
+                ClassCountTable projection = new ClassCountTable(width, slots.size);
+                for (int i = 0; i < slots.size; i++) {
+                    sizes.getCodes(slots.slots[i], codes);
+                    projection.add(withWildcards(codes, columns, key), sizes.getCount(slots.slots[i]));
+                }
+                slots = own.getValue();
+                for (int i = 0; i < slots.size; i++) {
+                    sizes.getCodes(slots.slots[i], codes);
+                    long matches = projection.get(withWildcards(codes, columns, key));
+                    if (matches != 0L) {
+                        result.add(codes, matches);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the columns containing wildcards, as a bit mask.
+     *
+     * @param codes The codes
+     * @return long
+     */
+    private static long getWildcards(int[] codes) {
+        long result = 0L;
+        for (int i = 0; i < codes.length; i++) {
+            result |= codes[i] == WILDCARD ? 1L << i : 0L;
+        }
+        return result;
+    }
+
+    /**
+     * Copies the codes, replacing the given columns by wildcards.
+     *
+     * @param codes The codes
+     * @param columns The columns, as a bit mask
+     * @param target The array to copy the codes to
+     * @return int[] the target
+     */
+    private static int[] withWildcards(int[] codes, long columns, int[] target) {
+        for (int i = 0; i < codes.length; i++) {
+            target[i] = (columns & (1L << i)) != 0L ? WILDCARD : codes[i];
+        }
+        return target;
+    }
+
+    /**
+     * A growable list of slots.
+     */
+    private static class SlotList {
+        /** The slots */
+        private long[] slots = new long[16];
+
+        /** The number of slots */
+        private int size;
+
+        /**
+         * Adds a slot.
+         *
+         * @param slot The slot
+         */
+        private void add(long slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
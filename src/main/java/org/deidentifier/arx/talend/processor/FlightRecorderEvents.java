@@ -0,0 +1,129 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class creates the events of the Java Flight Recorder. It is only loaded by
+ * {@link ProcessingEvents}, if the flight recorder is available.
+ * @author Florian Wiedner
+ */
+public class FlightRecorderEvents implements ProcessingEvent.Factory {
+
+    @Override
+    public ProcessingEvent create(ProcessingEvent.Type type) {
+        switch (type) {
+            case BUFFERIZE:
+                return new Bufferize();
+            case ROW_PROCESSING:
+                return new RowProcessing();
+            case CELL_SUPPRESSION:
+                return new CellSuppression();
+            case OPTIMIZE:
+                return new Optimize();
+            case WRITE:
+                return new Write();
+            default:
+                throw new IllegalArgumentException("Unknown event: " + type);
+        }
+    }
+
+    /**
+     * The base of the events, with the fields describing the block.
+     */
+    @Category({"ARX", "Talend"})
+    @StackTrace(false)
+    public abstract static class BlockEvent extends Event implements ProcessingEvent {
+        @Label("Block Size")
+        @Description("The number of rows of the block")
+        int blockSize;
+
+        @Label("Quasi-Identifiers")
+        @Description("The number of quasi-identifiers")
+        int qiCount;
+
+        @Label("Search Mode")
+        @Description("The search mode of ARX, i.e. optimal, heuristic or none")
+        String searchMode;
+
+        @Label("Suppressed Cells")
+        @Description("The number of suppressed cells")
+        long suppressedCells;
+
+        @Override
+        public void set(int blockSize, int qiCount, String searchMode) {
+            this.blockSize = blockSize;
+            this.qiCount = qiCount;
+            this.searchMode = searchMode;
+        }
+
+        @Override
+        public void addSuppressedCells(long cells) {
+            this.suppressedCells += cells;
+        }
+    }
+
+    /**
+     * Buffering of a single record. Disabled by default, as it is emitted per record.
+     * It is only allocated if enabled.
+     */
+    @Name("org.deidentifier.arx.talend.Bufferize")
+    @Label("Bufferize Record")
+    @Enabled(false)
+    public static class Bufferize extends BlockEvent {
+    }
+
+    /**
+     * Processing of a block, including waiting for and emitting completed blocks.
+     */
+    @Name("org.deidentifier.arx.talend.RowProcessing")
+    @Label("Process Block")
+    public static class RowProcessing extends BlockEvent {
+    }
+
+    /**
+     * Cell suppression of a block.
+     */
+    @Name("org.deidentifier.arx.talend.CellSuppression")
+    @Label("Cell Suppression")
+    public static class CellSuppression extends BlockEvent {
+    }
+
+    /**
+     * Optimization of the output of ARX.
+     */
+    @Name("org.deidentifier.arx.talend.Optimize")
+    @Label("Optimize Output")
+    public static class Optimize extends BlockEvent {
+    }
+
+    /**
+     * Passing a block to the next step of the transformation.
+     */
+    @Name("org.deidentifier.arx.talend.Write")
+    @Label("Write Block")
+    public static class Write extends BlockEvent {
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.deidentifier.arx.AttributeType.Hierarchy;
+
+/**
+ * This class maintains the suppression-only hierarchies of the quasi-identifiers
+ * across blocks. The domain of each attribute grows with the distinct values of
+ * the blocks seen so far and a hierarchy is only rebuilt when its domain has grown.
+ * To bound memory and the cost of rebuilding for attributes of high cardinality, a
+ * domain which exceeds twice the distinct values of the current block is replaced
+ * by the values of this block. Instances may be shared between threads.
+ * @author Florian Wiedner
+ */
+public class HierarchyCache {
+    /** The maximal size of a domain, relative to the distinct values of the current block */
+    private static final int MAX_DOMAIN_FACTOR = 2;
+
+    /** The distinct values seen so far, per attribute */
+    private final Map<String, Set<String>> domains = new HashMap<>();
+
+    /** The hierarchy for the current domain, per attribute */
+    private final Map<String, String[][]> hierarchies = new HashMap<>();
+
+    /**
+     * Returns the hierarchy for the attribute, covering at least the given values.
+     *
+     * @param attribute The attribute
+     * @param values The distinct values of the attribute in the current block
+     * @return Hierarchy
+     */
+    public synchronized Hierarchy getHierarchy(String attribute, String[] values) {
+        Set<String> domain = domains.computeIfAbsent(attribute, key -> new LinkedHashSet<>());
+        String[][] hierarchy = hierarchies.get(attribute);
+        if (Collections.addAll(domain, values) || hierarchy == null) {
+            if (domain.size() > MAX_DOMAIN_FACTOR * values.length) {
+                // Forget the values of earlier blocks
+                domain.clear();
+                Collections.addAll(domain, values);
+            }
+            hierarchy = new String[domain.size()][];
+            int i = 0;
+            for (String value : domain) {
+                hierarchy[i++] = new String[] { value, OperationDataTransformer.MAGIC_NULL_VALUE };
+            }
+            hierarchies.put(attribute, hierarchy);
+        }
+        return Hierarchy.create(hierarchy);
+    }
+}
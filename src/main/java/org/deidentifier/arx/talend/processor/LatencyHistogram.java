@@ -0,0 +1,169 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a histogram of latencies in nanoseconds. Like HDR histograms,
+ * it uses buckets of exponentially growing width, each split into a fixed number of
+ * linear sub-buckets, so that all values are recorded with a relative error of at most
+ * 1/16 in constant memory. Instances may be updated from several threads.
+ * @author Florian Wiedner
+ */
+public class LatencyHistogram {
+    /** The number of bits of the sub-buckets */
+    private static final int SUB_BITS = 4;
+
+    /** The number of sub-buckets */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /** The number of values per bucket */
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BITS) * SUB_BUCKETS);
+
+    /** The number of values */
+    private final LongAdder count = new LongAdder();
+
+    /** The sum of all values */
+    private final LongAdder sum = new LongAdder();
+
+    /** The largest value */
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+    /**
+     * Records a value.
+     *
+     * @param nanos The value in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0L, nanos);
+        counts.incrementAndGet(getIndex(nanos));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Adds all values of another histogram.
+     *
+     * @param other The other histogram
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long value = other.counts.get(i);
+            if (value != 0L) {
+                counts.addAndGet(i, value);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max.get());
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return long
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all values in nanoseconds.
+     *
+     * @return long
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the largest value in nanoseconds.
+     *
+     * @return long
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all values in nanoseconds.
+     *
+     * @return double
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0L ? 0d : (double) getSum() / count;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile in nanoseconds.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return long
+     */
+    public long getPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(percentile / 100d * total);
+        long seen = 0L;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1L, rank)) {
+                return Math.min(getMax(), getUpperBound(i));
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the bucket of a value.
+     *
+     * @param value The value
+     * @return int
+     */
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     *
+     * @param index The bucket
+     * @return long
+     */
+    private static long getUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1L;
+    }
+}
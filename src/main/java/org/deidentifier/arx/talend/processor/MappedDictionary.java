@@ -0,0 +1,257 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * This class implements a dictionary of strings, which is held outside of the heap.
+ * The values are stored as UTF-8 in segments, preceded by their length, and the
+ * position of each value is stored by its code. Values are looked up with open
+ * addressing and linear probing. Each slot holds the hash of the value and its code
+ * plus one, so that slots with a code of zero are empty. All storage is obtained from
+ * the given allocator, e.g. as memory-mapped segment files. Segments of values start
+ * small and double in size up to a maximum, so that storage grows with the values.
+ * @author Florian Wiedner
+ */
+public class MappedDictionary {
+    /** The number of bytes of the first segment of values */
+    private static final int MIN_SEGMENT_BYTES = 1 << 16;
+
+    /** The maximal number of bytes of a segment of values, unless a single value is larger */
+    private static final int MAX_SEGMENT_BYTES = 1 << 26;
+
+    /** The number of bits addressing a position within a chunk of positions */
+    private static final int POSITION_BITS = 16;
+
+    /** The number of bytes per slot */
+    private static final int SLOT_BYTES = 8;
+
+    /** The initial number of slots */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /** The maximal number of slots, which fit into a single buffer */
+    private static final int MAX_CAPACITY = 1 << 27;
+
+    /** The maximal fraction of occupied slots */
+    private static final double MAX_LOAD = 0.5d;
+
+    /** The allocator for storage, returning zeroed buffers of the given size */
+    private final LongFunction<? extends ByteBuffer> allocator;
+
+    /** Releases storage which is no longer used */
+    private final Consumer<? super ByteBuffer> releaser;
+
+    /** The segments of values */
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    /** The chunks of positions, each the index of the segment followed by the offset */
+    private final List<LongBuffer> positions = new ArrayList<>();
+
+    /** The slots */
+    private ByteBuffer slots;
+
+    /** The number of slots, a power of two */
+    private int capacity;
+
+    /** The number of values */
+    private int size;
+
+    /** The offset of the end of the values in the last segment */
+    private int end;
+
+    /**
+     * Constructor.
+     *
+     * @param allocator The allocator for storage, returning zeroed buffers of the given size
+     * @param releaser Releases storage which is no longer used, e.g. the slots before growing
+     */
+    public MappedDictionary(LongFunction<? extends ByteBuffer> allocator, Consumer<? super ByteBuffer> releaser) {
+        this.allocator = allocator;
+        this.releaser = releaser;
+        this.capacity = INITIAL_CAPACITY;
+        this.slots = allocator.apply((long) capacity * SLOT_BYTES);
+    }
+
+    /**
+     * Returns the code of a value, adding the value if it is not yet contained.
+     * Codes are assigned consecutively, starting at zero.
+     *
+     * @param value The value, may be null
+     * @return int
+     */
+    public int getCode(String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(value);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int code = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+            if (code < 0) {
+                code = append(bytes);
+                slots.putInt(slot * SLOT_BYTES, hash);
+                slots.putInt(slot * SLOT_BYTES + 4, code + 1);
+                if (size > capacity * MAX_LOAD) {
+                    grow();
+                }
+                return code;
+            }
+            if (slots.getInt(slot * SLOT_BYTES) == hash && matches(code, bytes)) {
+                return code;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a code.
+     *
+     * @param code The code
+     * @return String
+     */
+    public String get(int code) {
+        long position = getPosition(code);
+        ByteBuffer segment = segments.get((int) (position >>> 32));
+        int offset = (int) position;
+        int length = segment.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer value = segment.duplicate();
+        value.position(offset + 4);
+        value.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stores a value and assigns the next code to it.
+     *
+     * @param bytes The encoded value, null for null
+     * @return int
+     */
+    private int append(byte[] bytes) {
+        int length = bytes == null ? 0 : bytes.length;
+        ByteBuffer segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.capacity() - end < length + 4) {
+            int segmentBytes = segment == null ? MIN_SEGMENT_BYTES : (int) Math.min(MAX_SEGMENT_BYTES, 2L * segment.capacity());
+            segment = allocator.apply(Math.max(segmentBytes, length + 4));
+            segments.add(segment);
+            end = 0;
+        }
+        segment.putInt(end, bytes == null ? -1 : length);
+        for (int i = 0; i < length; i++) {
+            segment.put(end + 4 + i, bytes[i]);
+        }
+        int code = size++;
+        if ((code >>> POSITION_BITS) == positions.size()) {
+            positions.add(allocator.apply((long) Long.BYTES << POSITION_BITS).asLongBuffer());
+        }
+        positions.get(code >>> POSITION_BITS).put(code & ((1 << POSITION_BITS) - 1), ((long) (segments.size() - 1) << 32) | end);
+        end += length + 4;
+        return code;
+    }
+
+    /**
+     * Returns whether the value of a code equals the given encoded value.
+     *
+     * @param code The code
+     * @param bytes The encoded value, null for null
+     * @return boolean
+     */
+    private boolean matches(int code, byte[] bytes) {
+        long position = getPosition(code);
+        ByteBuffer segment = segments.get((int) (position >>> 32));
+        int offset = (int) position;
+        int length = segment.getInt(offset);
+        if (bytes == null || length < 0) {
+            return bytes == null && length < 0;
+        }
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (segment.get(offset + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position of the value of a code.
+     *
+     * @param code The code
+     * @return long
+     */
+    private long getPosition(int code) {
+        return positions.get(code >>> POSITION_BITS).get(code & ((1 << POSITION_BITS) - 1));
+    }
+
+    /**
+     * Doubles the number of slots and re-inserts all codes.
+     */
+    private void grow() {
+        if (capacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Dictionary exceeds " + (int) (MAX_CAPACITY * MAX_LOAD) + " values");
+        }
+        ByteBuffer previous = this.slots;
+        int previousCapacity = this.capacity;
+        this.capacity = previousCapacity << 1;
+        this.slots = allocator.apply((long) capacity * SLOT_BYTES);
+        int mask = capacity - 1;
+        for (int i = 0; i < previousCapacity; i++) {
+            int code = previous.getInt(i * SLOT_BYTES + 4);
+            if (code == 0) {
+                continue;
+            }
+            int hash = previous.getInt(i * SLOT_BYTES);
+            int slot = hash & mask;
+            while (slots.getInt(slot * SLOT_BYTES + 4) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putInt(slot * SLOT_BYTES, hash);
+            slots.putInt(slot * SLOT_BYTES + 4, code);
+        }
+        releaser.accept(previous);
+    }
+
+    /**
+     * Returns the hash of a value, spreading the bits of the string hash.
+     *
+     * @param value The value, may be null
+     * @return int
+     */
+    private static int hash(String value) {
+        int hash = value == null ? 0 : value.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps track of the memory-mapped segment files of a buffer, so that they
+ * are unmapped as soon as the buffer is released, instead of when the mappings are
+ * garbage collected. Segments are unmapped via the cleaner of the JDK, which is looked
+ * up reflectively. If it is not available, the mappings are left to the garbage
+ * collector. Segment files which cannot be deleted while mapped are deleted once
+ * unmapped.
+ * @author Florian Wiedner
+ */
+class MappedSegments {
+    /** Unmaps a segment, does nothing if the cleaner of the JDK is not available */
+    private static final Consumer<ByteBuffer> UNMAPPER = getUnmapper();
+
+    /** The directory for segment files */
+    private final File directory;
+
+    /** The mapped segments */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /** The segment files which could not be deleted while mapped */
+    private final List<File> files = new ArrayList<>();
+
+    /** The segments of other buffers, which are released with these segments */
+    private final List<MappedSegments> shared = new ArrayList<>();
+
+    /** The number of bytes mapped */
+    private long mappedBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param directory The directory for segment files
+     */
+    MappedSegments(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a memory-mapped segment file of the given size. The file is deleted
+     * right away where the platform allows this, as the mapping stays valid.
+     *
+     * @param size The size in bytes
+     * @return MappedByteBuffer
+     */
+    MappedByteBuffer map(long size) {
+        try {
+            File file = File.createTempFile("arx-buffer-", ".seg", directory);
+            MappedByteBuffer segment;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            if (!file.delete()) {
+                files.add(file);
+            }
+            segments.add(segment);
+            mappedBytes += size;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill buffer to " + directory, e);
+        }
+    }
+
+    /**
+     * Unmaps a single segment before the others, e.g. if it has been replaced.
+     * The segment must not be accessed afterwards.
+     *
+     * @param segment The segment, as returned by {@link #map(long)}
+     */
+    void unmap(ByteBuffer segment) {
+        Iterator<MappedByteBuffer> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == segment) {
+                iterator.remove();
+                mappedBytes -= segment.capacity();
+                UNMAPPER.accept(segment);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases the segments of another buffer together with these segments.
+     *
+     * @param other The segments of the other buffer
+     */
+    void share(MappedSegments other) {
+        if (other != this) {
+            shared.add(other);
+        }
+    }
+
+    /**
+     * Returns the number of bytes mapped, including the segments of other buffers.
+     *
+     * @return long
+     */
+    long getMappedBytes() {
+        long bytes = mappedBytes;
+        for (MappedSegments other : shared) {
+            bytes += other.getMappedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Unmaps all segments, including those of other buffers, and deletes the
+     * remaining segment files. None of the segments must be accessed afterwards.
+     * Releasing the segments again does nothing.
+     */
+    void release() {
+        for (MappedByteBuffer segment : segments) {
+            UNMAPPER.accept(segment);
+        }
+        segments.clear();
+        mappedBytes = 0L;
+        for (File file : files) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        files.clear();
+        for (MappedSegments other : shared) {
+            other.release();
+        }
+        shared.clear();
+    }
+
+    /**
+     * Returns the function unmapping segments via the cleaner of the JDK. As of Java 9,
+     * the cleaner is invoked via sun.misc.Unsafe, before via sun.nio.ch.DirectBuffer.
+     *
+     * @return Consumer<ByteBuffer>
+     */
+    private static Consumer<ByteBuffer> getUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return segment -> invoke(invokeCleaner, unsafe, segment);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // Before Java 9
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return segment -> {
+                Object instance = invoke(cleaner, segment);
+                if (instance != null) {
+                    invoke(clean, instance);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            return segment -> {
+                // Unmapped by the garbage collector
+            };
+        }
+    }
+
+    /**
+     * Invokes a method of the JDK.
+     *
+     * @param method The method
+     * @param target The target
+     * @param arguments The arguments
+     * @return Object
+     */
+    private static Object invoke(Method method, Object target, Object... arguments) {
+        try {
+            return method.invoke(target, arguments);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot unmap segment", e);
+        }
+    }
+}
@@ -19,14 +19,15 @@
 package org.deidentifier.arx.talend.processor;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.deidentifier.arx.ARXAnonymizer;
 import org.deidentifier.arx.ARXConfiguration;
 import org.deidentifier.arx.ARXResult;
-import org.deidentifier.arx.AttributeType;
 import org.deidentifier.arx.AttributeType.Hierarchy;
-import org.deidentifier.arx.AttributeType.Hierarchy.DefaultHierarchy;
 import org.deidentifier.arx.Data;
 import org.deidentifier.arx.DataHandle;
 import org.deidentifier.arx.criteria.AverageReidentificationRisk;
@@ -47,6 +48,18 @@ public class OperationCellSuppression {
     /** Parameters determining runtime behavior. */
     private final ParametersRuntime runtime;
 
+    /** Hierarchies of the quasi-identifiers. */
+    private final HierarchyCache hierarchies;
+
+    /** The transformation of the previous block. */
+    private final AtomicReference<Map<String, Integer>> transformations;
+
+    /** The time remaining for the job, null if there is no deadline. */
+    private final TimeBudget budget;
+
+    /** The statistics of the blocks processed by this object. */
+    private final ParametersStatistics statistics = new ParametersStatistics();
+
     /**
      * Constructor.
      *
@@ -54,40 +67,370 @@ public class OperationCellSuppression {
      * @param runtime ParametersRuntime
      */
     public OperationCellSuppression(ParametersRisk risk, ParametersRuntime runtime) {
+        this(risk, runtime, new HierarchyCache(), new AtomicReference<>(), null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param risk ParametersRisk
+     * @param runtime ParametersRuntime
+     * @param hierarchies HierarchyCache shared between blocks
+     * @param transformations The generalization levels chosen for the previous block, shared between blocks
+     * @param budget The time remaining for the job, shared between blocks, null if there is no deadline
+     */
+    public OperationCellSuppression(ParametersRisk risk, ParametersRuntime runtime, HierarchyCache hierarchies,
+                                    AtomicReference<Map<String, Integer>> transformations, TimeBudget budget) {
         this.risk = risk;
         this.runtime = runtime;
+        this.hierarchies = hierarchies;
+        this.transformations = transformations;
+        this.budget = budget;
     }
 
 
     /**
      * Perform cell suppression
      *
-     * @param data List<String[]> All the Data from the Input
-     * @return List<String[]>
+     * @param data DataBuffer All the Data from the Input
+     * @return DataBuffer
+     * @throws Exception Old Exception Style
+     */
+    public DataBuffer perform(DataBuffer data) throws Exception {
+        DataBuffer result = tryPerform(data);
+        return result != null ? result : new OperationDataTransformer().getEmptyDataset(data);
+    }
+
+    /**
+     * Perform cell suppression, if a solution exists.
+     *
+     * @param data DataBuffer All the Data from the Input
+     * @return DataBuffer null if the block cannot be anonymized
      * @throws Exception Old Exception Style
      */
-    public List<String[]> perform(List<String[]> data) throws Exception {
-        int numDataRows = data.size() - 1;
-        int k = getSizeThreshold(risk.getHighestRisk());
+    DataBuffer tryPerform(DataBuffer data) throws Exception {
+        int numDataRows = data.getNumRows();
+        int k = getMinimalClassSize();
         if (k > numDataRows) {
-            return new OperationDataTransformer().getEmptyDataset(data.get(0), data.get(0).length, numDataRows);
+            return null;
         }
-        // Load data
-        Data arxData = Data.create(data);
-        // Configure QI settings
-        for (String attr : data.get(0)) {
-            arxData.getDefinition().setAttributeType(attr, AttributeType.INSENSITIVE_ATTRIBUTE);
+        // Only the quasi-identifiers are passed to ARX
+        int[] qis = risk.getQiIndices(data.getHeader());
+        double o_min = runtime.getRecordsPerIteration();
+
+        // Skip ARX, if the block already satisfies the thresholds
+        if (runtime.isPreCheck() && qis.length <= EquivalenceClasses.MAX_QIS) {
+            EquivalenceClasses classes = EquivalenceClasses.of(data, qis);
+            statistics.trackClassFootprint(classes.getFootprint());
+            if (isSatisfied(classes, k)) {
+                return data;
+            }
+        }
+
+        // Try the transformation of the previous block first, else the one found on a sample
+        Map<String, Integer> previous = runtime.isWarmStart() ? transformations.get() : null;
+        if (previous == null && runtime.doSampling(numDataRows)) {
+            previous = searchSample(data, qis, o_min);
+        }
+        Data arxData = null;
+        ARXResult result = null;
+        DataHandle output = null;
+        if (previous != null) {
+            arxData = createData(data, qis);
+            for (int qi : qis) {
+                String attribute = data.getHeader()[qi];
+                int level = previous.getOrDefault(attribute, 0);
+                arxData.getDefinition().setMinimumGeneralization(attribute, level);
+                arxData.getDefinition().setMaximumGeneralization(attribute, level);
+            }
+            result = anonymize(arxData, createConfiguration(1d, k, o_min, numDataRows));
+            output = result.getOutput();
+            if (output == null) {
+                // Thresholds not met, fall back to a full search
+                arxData.getHandle().release();
+                arxData = null;
+            }
+        }
+
+        // Perform anonymization
+        if (arxData == null) {
+            arxData = createData(data, qis);
+            result = anonymize(arxData, createConfiguration(1d, k, o_min, numDataRows));
+            output = result.getOutput();
+            if (runtime.isWarmStart() && output != null) {
+                transformations.set(getLevels(result, data, qis));
+            }
+        }
+
+        if (output != null && result.isOptimizable(output)) {
+            ProcessingEvent event = ProcessingEvent.create(ProcessingEvent.Type.OPTIMIZE);
+            event.set(numDataRows, qis.length, getSearchMode());
+            event.begin();
+            long start = System.nanoTime();
+            try {
+                result.optimizeIterativeFast(output, o_min);
+            } catch (RollbackRequiredException e) {
+                throw new Exception(e);
+            } finally {
+                statistics.trackLatency(ParametersStatistics.Phase.OPTIMIZE, System.nanoTime() - start);
+                event.end();
+            }
+            if (event.isEnabled()) {
+                // ARX suppresses all quasi-identifiers of the remaining outliers
+                for (int row = 0; row < numDataRows; row++) {
+                    event.addSuppressedCells(output.isOutlier(row) ? qis.length : 0);
+                }
+                event.commit();
+            }
+        }
+        if (output == null) {
+            arxData.getHandle().release();
+            return null;
+        }
+
+        // Return
+        long start = System.nanoTime();
+        DataBuffer retval = new OperationDataTransformer().convert(data, qis, output);
+        statistics.trackLatency(ParametersStatistics.Phase.CONVERT, System.nanoTime() - start);
+
+        arxData.getHandle().release();
+        return retval;
+    }
+
+    /**
+     * Perform cell suppression. If the anonymization of the block fails or no solution
+     * is found, the block is split into halves, which are anonymized separately, until
+     * the deadline is reached or the halves would be smaller than twice the minimal
+     * class size. Only the parts which cannot be anonymized are suppressed completely.
+     *
+     * @param data DataBuffer All the Data from the Input
+     * @param deadline The deadline for splitting, as returned by {@link System#nanoTime()}
+     * @return DataBuffer
+     */
+    public DataBuffer perform(DataBuffer data, long deadline) {
+        DataBuffer result;
+        try {
+            result = tryPerform(data);
+        } catch (Exception e) {
+            result = null;
+        }
+        if (result != null) {
+            return result;
+        }
+        int rows = data.getNumRows();
+        if (rows < 2 * getMinimalClassSize() || System.nanoTime() - deadline >= 0) {
+            return new OperationDataTransformer().getEmptyDataset(data);
+        }
+        DataBuffer lower = data.subset(0, rows / 2);
+        DataBuffer first = perform(lower, deadline);
+        DataBuffer upper = data.subset(rows / 2, rows);
+        DataBuffer second = perform(upper, deadline);
+        DataBuffer merged = first.concat(second);
+        // The halves have been copied, so that their segment files are no longer needed
+        for (DataBuffer half : new DataBuffer[] {lower, first, upper, second}) {
+            half.release();
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the minimal class size implied by the highest risk threshold. Smaller
+     * blocks are suppressed completely.
+     *
+     * @return int
+     */
+    public int getMinimalClassSize() {
+        return getSizeThreshold(risk.getHighestRisk());
+    }
+
+    /**
+     * Returns the search mode used by ARX, as reported in events.
+     *
+     * @return String
+     */
+    public String getSearchMode() {
+        return isHeuristicSearch() ? ProcessingEvent.HEURISTIC : ProcessingEvent.OPTIMAL;
+    }
+
+    /**
+     * Returns the statistics of the blocks processed by this object.
+     *
+     * @return ParametersStatistics
+     */
+    public ParametersStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns whether the equivalence classes satisfy the thresholds without any
+     * transformation. This mirrors the privacy models configured for ARX.
+     *
+     * @param classes The equivalence classes
+     * @param k The minimal class size
+     * @return boolean
+     */
+    private boolean isSatisfied(EquivalenceClasses classes, int k) {
+        ParametersRisk risks = classes.getRisks(k);
+        if (risk.getRecordsAtRisk() == 0d) {
+            return risks.getRecordsAtRisk() == 0d && (risk.getAverageRisk() == 1d || risks.getAverageRisk() <= risk.getAverageRisk());
+        } else {
+            return risks.getRecordsAtRisk() <= risk.getRecordsAtRisk() && risks.getAverageRisk() <= risk.getAverageRisk();
+        }
+    }
+
+    /**
+     * Searches for a transformation on a sample of the block. As the classes of the
+     * sample are smaller than those of the block by the sample fraction, the risk
+     * thresholds are raised accordingly, but bounded by the minimal class size of the
+     * sample, so that they still constrain the search. The transformation is applied
+     * to the whole block afterwards, which checks the original thresholds again. The
+     * sample only speeds up the search, so if it fails, null is returned and the whole
+     * block is searched instead.
+     *
+     * @param data DataBuffer All the Data from the Input
+     * @param qis The indices of the quasi-identifiers
+     * @param o_min The minimal fraction of records to optimize per iteration
+     * @return The generalization levels, null if no transformation was found
+     */
+    Map<String, Integer> searchSample(DataBuffer data, int[] qis, double o_min) {
+        double fraction = runtime.getSampleFraction();
+        int k = getSampleClassSize(fraction);
+        DataBuffer sample = createSample(data, qis, fraction);
+        Data arxSample = null;
+        try {
+            if (k > sample.getNumRows()) {
+                return null;
+            }
+            ARXConfiguration config = createConfiguration(fraction, k, o_min, sample.getNumRows());
+            if (config.getPrivacyModels().isEmpty()) {
+                // ARX rejects configurations without privacy models
+                return null;
+            }
+            arxSample = createData(sample, qis);
+            ARXResult result = anonymize(arxSample, config);
+            return result.getGlobalOptimum() == null ? null : getLevels(result, data, qis);
+        } catch (Exception e) {
+            // The whole block is searched instead
+            return null;
+        } finally {
+            if (arxSample != null) {
+                arxSample.getHandle().release();
+            }
+            sample.release();
         }
-        for (ParametersRisk.QIValue qi : this.risk.getQis()) {
-            if(qi.isQi()) {
-                Hierarchy hierarchy = getHierarchy(arxData, qi.getField());
-                arxData.getDefinition().setAttributeType(qi.getField(), hierarchy);
+    }
+
+    /**
+     * Draws a sample of the block, which is stratified by the equivalence classes. The
+     * rows of each class are sampled systematically, starting at a random offset, so that
+     * each class contributes the given fraction of its rows, up to rounding.
+     *
+     * @param data DataBuffer All the Data from the Input
+     * @param qis The indices of the quasi-identifiers
+     * @param fraction The fraction of rows to sample
+     * @return DataBuffer
+     */
+    private DataBuffer createSample(DataBuffer data, int[] qis, double fraction) {
+        DataBuffer result = data.newBuffer();
+        ClassCountTable counts = new ClassCountTable(qis.length);
+        long seed = new Random(runtime.getSampleSeed()).nextLong();
+        int[] codes = new int[qis.length];
+        for (int row = 0; row < data.getNumRows(); row++) {
+            long hash = seed;
+            for (int i = 0; i < qis.length; i++) {
+                codes[i] = data.getCode(row, qis[i]);
+                hash = (hash ^ codes[i]) * 0x9E3779B97F4A7C15L;
+            }
+            counts.add(codes, 1L);
+            long count = counts.get(codes);
+            // The offset of the class in [0, 1), derived from the seed and its codes
+            double offset = ((hash ^ (hash >>> 31)) >>> 11) * 0x1.0p-53;
+            if (Math.floor(count * fraction + offset) > Math.floor((count - 1) * fraction + offset)) {
+                result.add(data, row);
             }
         }
-        // Configure algorithm
+        statistics.trackClassFootprint(counts.getFootprint());
+        return result;
+    }
+
+    /**
+     * Returns the generalization levels of the global optimum.
+     *
+     * @param result ARXResult
+     * @param data DataBuffer All the Data from the Input
+     * @param qis The indices of the quasi-identifiers
+     * @return Map<String, Integer>
+     */
+    private Map<String, Integer> getLevels(ARXResult result, DataBuffer data, int[] qis) {
+        Map<String, Integer> levels = new HashMap<>();
+        for (int qi : qis) {
+            String attribute = data.getHeader()[qi];
+            levels.put(attribute, result.getGlobalOptimum().getGeneralization(attribute));
+        }
+        return levels;
+    }
+
+    /**
+     * Returns the minimal class size for a sample. The classes of a sample are smaller
+     * than those of the block by the sample fraction, but must contain at least two
+     * records, so that the thresholds still constrain the search.
+     *
+     * @param fraction The sample fraction, 1 for the whole block
+     * @return int
+     */
+    int getSampleClassSize(double fraction) {
+        int k = getMinimalClassSize();
+        return fraction >= 1d ? k : Math.max(2, (int) Math.ceil(k * fraction));
+    }
+
+    /**
+     * Returns the risk threshold for a sample. The risks of the classes of a sample
+     * are higher than those of the block by the inverse of the sample fraction, up to
+     * the risk of the minimal class size of the sample.
+     *
+     * @param threshold The risk threshold for the block
+     * @param fraction The sample fraction, 1 for the whole block
+     * @param k The minimal class size of the sample
+     * @return double
+     */
+    double getSampleThreshold(double threshold, double fraction, int k) {
+        return fraction >= 1d ? threshold : Math.min(threshold / fraction, 1d / k);
+    }
+
+    /**
+     * Creates the ARX data object for the quasi-identifiers of the buffer.
+     *
+     * @param data DataBuffer All the Data from the Input
+     * @param qis The indices of the quasi-identifiers
+     * @return Data
+     */
+    private Data createData(DataBuffer data, int[] qis) {
+        long start = System.nanoTime();
+        Data arxData = Data.create(data.iterator(qis));
+        // Configure QI settings
+        for (int qi : qis) {
+            String attribute = data.getHeader()[qi];
+            Hierarchy hierarchy = hierarchies.getHierarchy(attribute, data.getDistinctValues(qi));
+            arxData.getDefinition().setAttributeType(attribute, hierarchy);
+        }
+        statistics.trackLatency(ParametersStatistics.Phase.BUILD, System.nanoTime() - start);
+        return arxData;
+    }
+
+    /**
+     * Creates the configuration of the algorithm.
+     *
+     * @param fraction The fraction of the rows of the block passed to ARX, 1 for the whole block
+     * @param k The minimal class size, for a sample as returned by {@link #getSampleClassSize(double)}
+     * @param o_min The minimal fraction of records to optimize per iteration
+     * @param rows The number of rows of the block
+     * @return ARXConfiguration
+     */
+    private ARXConfiguration createConfiguration(double fraction, int k, double o_min, int rows) {
         ARXConfiguration config = ARXConfiguration.create();
-        double o_min = runtime.getRecordsPerIteration();
         double maxOutliers = 1.0d - o_min;
+        double averageRisk = getSampleThreshold(risk.getAverageRisk(), fraction, k);
+        double highestRisk = getSampleThreshold(risk.getHighestRisk(), fraction, k);
 
         config.setSuppressionLimit(maxOutliers);
         config.setQualityModel(Metric.createLossMetric(0d));
@@ -96,40 +439,53 @@ public class OperationCellSuppression {
             if (k != 1) {
                 config.addPrivacyModel(new KAnonymity(k));
             }
-            if (risk.getAverageRisk() != 1d) {
-                config.addPrivacyModel(new AverageReidentificationRisk(risk.getAverageRisk()));
+            if (averageRisk != 1d) {
+                config.addPrivacyModel(new AverageReidentificationRisk(averageRisk));
             }
         } else {
-            config.addPrivacyModel(new AverageReidentificationRisk((risk.getAverageRisk()), (risk.getHighestRisk()), (risk.getRecordsAtRisk())));
+            config.addPrivacyModel(new AverageReidentificationRisk(averageRisk, highestRisk, (risk.getRecordsAtRisk())));
         }
-        config.setHeuristicSearchTimeLimit(runtime.getSecondsPerIteration() * 1000);
-        config.setHeuristicSearchEnabled(risk.getQis().size() > runtime.getMaxQisOptimal());
-        arxData.getHandle();
-        // Perform anonymization
+        if (budget != null) {
+            // Only the heuristic search is bounded in time
+            config.setHeuristicSearchTimeLimit(budget.getTimeLimit(rows));
+        } else {
+            config.setHeuristicSearchTimeLimit(runtime.getSecondsPerIteration() * 1000);
+        }
+        config.setHeuristicSearchEnabled(isHeuristicSearch());
+        return config;
+    }
+
+    /**
+     * Returns whether ARX searches heuristically. This is the case for many quasi-identifiers
+     * and if there is a deadline, as only the heuristic search is bounded in time.
+     *
+     * @return boolean
+     */
+    private boolean isHeuristicSearch() {
+        return budget != null || risk.getQis().size() > runtime.getMaxQisOptimal();
+    }
+
+    /**
+     * Runs the anonymizer.
+     *
+     * @param arxData Data
+     * @param config ARXConfiguration
+     * @return ARXResult
+     * @throws Exception Old Exception Style
+     */
+    ARXResult anonymize(Data arxData, ARXConfiguration config) throws Exception {
         ARXAnonymizer anonymizer = new ARXAnonymizer();
         anonymizer.setMaximumSnapshotSizeDataset((runtime.getSnapshotSizeDataset()));
         anonymizer.setMaximumSnapshotSizeSnapshot((runtime.getSnapshotSizeSnapshot()));
         anonymizer.setHistorySize(runtime.getCacheSize());
-        ARXResult result;
+        long start = System.nanoTime();
         try {
-            result = anonymizer.anonymize(arxData, config);
+            return anonymizer.anonymize(arxData, config);
         } catch (IOException e) {
             throw new Exception(e);
+        } finally {
+            statistics.trackLatency(ParametersStatistics.Phase.ANONYMIZE, System.nanoTime() - start);
         }
-        DataHandle output = result.getOutput();
-
-        if (output != null && result.isOptimizable(output)) {
-            try {
-                result.optimizeIterativeFast(output, o_min);
-            } catch (RollbackRequiredException e) {
-                throw new Exception(e);
-            }
-        }
-        // Return
-        List<String[]> retval = new OperationDataTransformer().convert(arxData.getHandle(), output);
-
-        arxData.getHandle().release();
-        return retval;
     }
 
 
@@ -148,21 +504,4 @@ public class OperationCellSuppression {
         }
         return (int) floor;
     }
-
-    /**
-     * Returns the generalization hierarchy for the dataset and attribute
-     *
-     * @param  data Data
-     * @param  attribute String
-     * @return Hierarchy
-     */
-    private Hierarchy getHierarchy(Data data, String attribute){
-        DefaultHierarchy hierarchy = Hierarchy.create();
-        int col = data.getHandle().getColumnIndexOf(attribute);
-        String[] values = data.getHandle().getDistinctValues(col);
-        for (String value : values) {
-            hierarchy.add(value, OperationDataTransformer.MAGIC_NULL_VALUE);
-        }
-        return hierarchy;
-    }
 }
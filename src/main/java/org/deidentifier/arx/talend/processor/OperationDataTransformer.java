@@ -23,11 +23,14 @@ import org.deidentifier.arx.DataType;
 import org.talend.sdk.component.api.processor.OutputEmitter;
 import org.talend.sdk.component.api.record.Record;
 import org.talend.sdk.component.api.record.Schema;
+import org.talend.sdk.component.api.service.record.RecordBuilderFactory;
 
 import javax.json.Json;
+import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -35,97 +38,202 @@ public class OperationDataTransformer {
     /** The String representation for NULL values */
     public final static String MAGIC_NULL_VALUE = "_TALEND_SPOON_NULL_";
 
+    /** The factory for JSON objects */
+    private static final JsonBuilderFactory JSON = Json.createBuilderFactory(Collections.emptyMap());
+
+    /** Maximal number of cached read plans */
+    private static final int MAX_READ_PLANS = 64;
+
+    /** Read plans of the schemas seen so far, by value */
+    private final Map<Schema, ReadPlan> plans = new HashMap<>();
+
+    /** The schema of the last record read */
+    private Schema lastSchema;
+
+    /** The types of the buffer of the last record read */
+    private Schema.Type[] lastTypes;
+
+    /** The plan for the schema of the last record read */
+    private ReadPlan lastPlan;
+
+    /** The plan for writing records */
+    private WritePlan writePlan;
+
 
     /**
-     * Creates an empty dataset containing null values in all cells.
+     * Creates an empty dataset containing null values in all cells, with the
+     * same header, types and number of rows as the given dataset.
      *
-     * @param cols number of columns
-     * @param rows number of rows
-     * @param header header
-     * @return Empty String
+     * @param data The dataset
+     * @return DataBuffer
      */
-    public List<String[]> getEmptyDataset(String[] header, int cols, int rows) {
-        List<String[]> ret = new ArrayList<>();
-
-        ret.add(header);
-
+    public DataBuffer getEmptyDataset(DataBuffer data) {
+        int rows = data.getNumRows();
+        DataBuffer ret = data.newBuffer();
         for (int i = 0; i < rows; i++) {
-            String[] row = new String[cols];
-            for (int j = 0; j < cols; j++) {
-                row[j] = MAGIC_NULL_VALUE;
+            for (int j = 0; j < ret.getNumColumns(); j++) {
+                ret.setNull(j);
             }
-            ret.add(row);
+            ret.next();
         }
         return ret;
     }
 
     /**
-     * Convert data coming from the previous step of the transformation to internal format.
+     * Convert data coming from the previous step of the transformation to internal format
+     * and add it to the buffer. Values of columns which the buffer stores in their native
+     * form are not converted to strings.
      *
      * @param stepData The Data from the previous Step
-     * @param header the header
-     * @return String[]
+     * @param buffer The buffer
+     */
+    public void read(Record stepData, DataBuffer buffer) {
+        ReadPlan plan = getReadPlan(stepData.getSchema(), buffer);
+        for (int i = 0; i < plan.readers.length; i++) {
+            if (plan.readers[i] == null) {
+                buffer.setNull(i);
+            } else {
+                plan.readers[i].read(stepData, buffer, i);
+            }
+        }
+        buffer.next();
+    }
+
+    /**
+     * Returns the read plan for the given schema. Plans are compiled once and cached
+     * by the value of the schema, as the runtime creates a new, but equal schema for
+     * each record. The schema of the previous record is checked first, so that the
+     * cache is only consulted when the schema changes. Whether a plan fits the header
+     * and types of the buffer is only checked when the buffer changes.
+     *
+     * @param schema The schema
+     * @param buffer The buffer
+     * @return ReadPlan
+     */
+    private ReadPlan getReadPlan(Schema schema, DataBuffer buffer) {
+        if ((schema == this.lastSchema || schema.equals(this.lastSchema))
+                && buffer.getTypes() == this.lastTypes && buffer.getHeader() == this.lastPlan.header) {
+            return this.lastPlan;
+        }
+        ReadPlan plan = this.plans.get(schema);
+        if (plan == null || !plan.accepts(buffer)) {
+            if (this.plans.size() >= MAX_READ_PLANS) {
+                this.plans.clear();
+            }
+            plan = new ReadPlan(schema, buffer.getHeader(), buffer.getTypes());
+            this.plans.put(schema, plan);
+        }
+        this.lastSchema = schema;
+        this.lastTypes = buffer.getTypes();
+        this.lastPlan = plan;
+        return plan;
+    }
+
+    /**
+     * Returns the type of each column of the header in the given schema. Columns
+     * which are missing in the schema are of type STRING.
+     *
+     * @param schema The schema
+     * @param header The header
+     * @return Schema.Type[]
      */
-    public String[] read(Record stepData, String header[]) {
-        String[] result = new String[header.length];
-        int[] index = new int[header.length];
-        Schema schema = stepData.getSchema();
-        schema.getEntries().forEach((element)->index[Arrays.asList(header).indexOf(element.getName())]=schema.getEntries().indexOf(element)+1);
-        for (int i = 0; i < result.length; i++) {
-            String string = null;
-            if(index[i]!=0) {
-                switch (schema.getEntries().get(index[i]-1).getType()) {
+    public Schema.Type[] getTypes(Schema schema, String[] header) {
+        Schema.Type[] types = new Schema.Type[header.length];
+        Arrays.fill(types, Schema.Type.STRING);
+        for (Schema.Entry entry : schema.getEntries()) {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals(entry.getName())) {
+                    types[i] = entry.getType();
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Convert/prepare internal data and pass it to the next step of the transformation
+     * if regularOutput==true. Else, pass all data to the error channel.
+     *
+     * @param payload The Data
+     * @param outputMain The Main Output
+     */
+    public void write(DataBuffer payload, final OutputEmitter<? super JsonObject> outputMain){
+        String[] header = payload.getHeader();
+        Schema.Type[] types = payload.getTypes();
+        boolean[][] nulls = getNullCodes(payload);
+        for (int i=0; i<payload.getNumRows(); i++) {
+            JsonObjectBuilder builder = JSON.createObjectBuilder();
+            for (int j = 0; j < header.length; j++) {
+                if (nulls[j] != null ? nulls[j][payload.getCode(i, j)] : payload.isNull(i, j)) {
+                    builder.add(header[j], JsonValue.NULL);
+                    continue;
+                }
+                switch (types[j]) {
                     case INT:
-                        string = Integer.toString(stepData.getInt(header[i]));
-                        break;
                     case LONG:
-                        string = Long.toString(stepData.getLong(header[i]) );
-                        break;
-                    case STRING:
-                        string = stepData.getString(header[i]);
-                        break;
-                    case BYTES:
-                        string = new String(stepData.getBytes(header[i]), StandardCharsets.UTF_8);
+                        builder.add(header[j], payload.getLong(i, j));
                         break;
                     case FLOAT:
-                        string = Float.toString(stepData.getFloat(header[i]));
+                        // Written with the digits of the float, which widening to double would extend
+                        builder.add(header[j], new BigDecimal(Float.toString((float) Double.longBitsToDouble(payload.getLong(i, j)))));
                         break;
                     case DOUBLE:
-                        string = Double.toString(stepData.getDouble(header[i]));
+                        builder.add(header[j], Double.longBitsToDouble(payload.getLong(i, j)));
                         break;
                     case BOOLEAN:
-                        string = Boolean.toString(stepData.getBoolean(header[i]));
+                        builder.add(header[j], payload.getLong(i, j) != 0L);
                         break;
-                    case DATETIME:
-                        string = stepData.getDateTime(header[i]).toString();
+                    default:
+                        builder.add(header[j], payload.get(i, j));
                         break;
                 }
             }
-            result[i] = string == null ? MAGIC_NULL_VALUE : string;
+            outputMain.emit(builder.build());
         }
-        return result;
     }
 
     /**
-     * Convert/prepare internal data and pass it to the next step of the transformation
-     * if regularOutput==true. Else, pass all data to the error channel.
+     * Convert/prepare internal data to records and pass it to the next step of the transformation.
+     * Columns stored in their native form keep their type.
      *
      * @param payload The Data
      * @param outputMain The Main Output
+     * @param factory The factory for records
      */
-    public void write(List<String[]> payload, final OutputEmitter<JsonObject> outputMain){
-        String[] header = payload.get(0);
-        // Skip header
-        for (int i=1; i<payload.size(); i++) {
-            String[] rowFromBuffer = payload.get(i);
-            JsonObjectBuilder builder = Json.createObjectBuilder();
-            for (int j = 0; j < rowFromBuffer.length; j++) {
-                String value = rowFromBuffer[j];
-                if (value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE) || value.equals(DataType.ANY_VALUE) || value.equals(DataType.NULL_VALUE)) {
-                    builder.add(header[j], JsonValue.NULL);
-                }
-                else {
-                    builder.add(header[j],value);
+    public void writeRecords(DataBuffer payload, final OutputEmitter<? super Record> outputMain, RecordBuilderFactory factory){
+        String[] header = payload.getHeader();
+        Schema.Type[] types = payload.getTypes();
+        if (this.writePlan == null || this.writePlan.header != header || !Arrays.equals(this.writePlan.types, types)) {
+            this.writePlan = new WritePlan(header, types, factory);
+        }
+        Schema.Entry[] entries = this.writePlan.entries;
+        boolean[][] nulls = getNullCodes(payload);
+        for (int i=0; i<payload.getNumRows(); i++) {
+            Record.Builder builder = factory.newRecordBuilder();
+            for (int j = 0; j < header.length; j++) {
+                if (nulls[j] != null) {
+                    builder.withString(entries[j], nulls[j][payload.getCode(i, j)] ? null : payload.get(i, j));
+                } else if (!payload.isNull(i, j)) {
+                    long value = payload.getLong(i, j);
+                    switch (types[j]) {
+                        case INT:
+                            builder.withInt(entries[j], (int) value);
+                            break;
+                        case LONG:
+                            builder.withLong(entries[j], value);
+                            break;
+                        case FLOAT:
+                            builder.withFloat(entries[j], (float) Double.longBitsToDouble(value));
+                            break;
+                        case DOUBLE:
+                            builder.withDouble(entries[j], Double.longBitsToDouble(value));
+                            break;
+                        case BOOLEAN:
+                            builder.withBoolean(entries[j], value != 0L);
+                            break;
+                        default:
+                            throw new IllegalStateException("Unsupported type: " + types[j]);
+                    }
                 }
             }
             outputMain.emit(builder.build());
@@ -133,20 +241,209 @@ public class OperationDataTransformer {
     }
 
     /**
-     * Converts a handle to a list of strings
+     * Returns for each dictionary-encoded column and code, whether the value represents null.
+     * The entries of columns stored in their native form are null.
+     *
+     * @param payload The Data
+     * @return boolean[][]
+     */
+    private boolean[][] getNullCodes(DataBuffer payload) {
+        Schema.Type[] types = payload.getTypes();
+        boolean[][] result = new boolean[payload.getNumColumns()][];
+        for (int j = 0; j < result.length; j++) {
+            if (DataBuffer.isTyped(types[j])) {
+                continue;
+            }
+            result[j] = new boolean[payload.getNumDistinctValues(j)];
+            for (int code = 0; code < result[j].length; code++) {
+                String value = payload.getDistinctValue(j, code);
+                result[j][code] = value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE) || value.equals(DataType.ANY_VALUE) || value.equals(DataType.NULL_VALUE);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a handle to a buffer. The output of ARX only contains the given columns
+     * of the input, all other columns are taken from the input.
      * @param input The Input to ARX
+     * @param columns The columns of the input passed to ARX
      * @param output the Output of ARX
      */
-    public List<String[]> convert(DataHandle input, DataHandle output) {
+    public DataBuffer convert(DataBuffer input, int[] columns, DataHandle output) {
         if (output != null) {
-            List<String[]> result = new ArrayList<>();
-            for (Iterator<String[]> iterator = output.iterator(); iterator.hasNext(); ) {
+            Iterator<String[]> iterator = output.iterator();
+            DataBuffer result = input.newBuffer(iterator.next());
+            while (iterator.hasNext()) {
                 result.add(iterator.next());
             }
-            return result;
+            return input.replaceColumns(columns, result);
         } else {
-            return getEmptyDataset(input.iterator().next(), input.getNumColumns(), input.getNumRows());
+            return getEmptyDataset(input);
         }
     }
 
+    /**
+     * Reads the value of a single field from a record into the buffer.
+     */
+    private interface FieldReader {
+        /**
+         * Sets the value of the column of the row currently being added
+         *
+         * @param record The record
+         * @param buffer The buffer
+         * @param column The column
+         */
+        void read(Record record, DataBuffer buffer, int column);
+    }
+
+    /**
+     * A compiled plan for reading records of a specific schema. It maps each column
+     * of the header to an accessor specialised to the type of the respective field
+     * and to the way the buffer stores the column.
+     */
+    private static class ReadPlan {
+        /** The header this plan has been compiled for */
+        private final String[] header;
+
+        /** The types of the buffer this plan has been compiled for */
+        private final Schema.Type[] types;
+
+        /** The accessor for each column of the header, null if the field is missing */
+        private final FieldReader[] readers;
+
+        /**
+         * Compiles the plan
+         *
+         * @param schema The schema
+         * @param header The header
+         * @param types The types of the columns of the buffer
+         */
+        private ReadPlan(Schema schema, String[] header, Schema.Type[] types) {
+            this.header = header;
+            this.types = types;
+            this.readers = new FieldReader[header.length];
+            Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                index.put(header[i], i);
+            }
+            for (Schema.Entry entry : schema.getEntries()) {
+                Integer column = index.get(entry.getName());
+                if (column != null) {
+                    this.readers[column] = DataBuffer.isTyped(types[column]) ?
+                            getTypedReader(entry.getName(), types[column]) :
+                            getReader(entry.getName(), entry.getType());
+                }
+            }
+        }
+
+        /**
+         * Returns whether this plan can be used for the buffer
+         *
+         * @param buffer The buffer
+         * @return boolean
+         */
+        private boolean accepts(DataBuffer buffer) {
+            return header == buffer.getHeader() && (types == buffer.getTypes() || Arrays.equals(types, buffer.getTypes()));
+        }
+
+        /**
+         * Returns the accessor for a field, which is stored as a string
+         *
+         * @param name The name of the field
+         * @param type The type of the field
+         * @return FieldReader
+         */
+        private static FieldReader getReader(String name, Schema.Type type) {
+            switch (type) {
+                case INT:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : Integer.toString(record.getInt(name)));
+                case LONG:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : Long.toString(record.getLong(name)));
+                case STRING:
+                    return (record, buffer, column) -> buffer.setString(column, nonNull(record.getString(name)));
+                case BYTES:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : new String(record.getBytes(name), StandardCharsets.UTF_8));
+                case FLOAT:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : Float.toString(record.getFloat(name)));
+                case DOUBLE:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : Double.toString(record.getDouble(name)));
+                case BOOLEAN:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : Boolean.toString(record.getBoolean(name)));
+                case DATETIME:
+                    return (record, buffer, column) -> buffer.setString(column, record.get(Object.class, name) == null ? MAGIC_NULL_VALUE : record.getDateTime(name).toString());
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Returns the accessor for a field, which is stored in its native form
+         *
+         * @param name The name of the field
+         * @param type The type of the column of the buffer
+         * @return FieldReader
+         */
+        private static FieldReader getTypedReader(String name, Schema.Type type) {
+            return (record, buffer, column) -> {
+                Object value = record.get(Object.class, name);
+                if (value == null) {
+                    buffer.setNull(column);
+                } else if (value instanceof Boolean) {
+                    buffer.setBoolean(column, (Boolean) value);
+                } else if (value instanceof Number && (type == Schema.Type.FLOAT || type == Schema.Type.DOUBLE)) {
+                    buffer.setDouble(column, ((Number) value).doubleValue());
+                } else if (value instanceof Number) {
+                    buffer.setLong(column, ((Number) value).longValue());
+                } else {
+                    buffer.setString(column, value.toString());
+                }
+            };
+        }
+
+        /**
+         * Returns the value, or the representation of null
+         *
+         * @param value The value
+         * @return String
+         */
+        private static String nonNull(String value) {
+            return value == null ? MAGIC_NULL_VALUE : value;
+        }
+    }
+
+    /**
+     * A plan for writing records. It contains the entries of the output, in the
+     * order of the header.
+     */
+    private static class WritePlan {
+        /** The header this plan has been prepared for */
+        private final String[] header;
+
+        /** The types this plan has been prepared for */
+        private final Schema.Type[] types;
+
+        /** The entry for each column of the header */
+        private final Schema.Entry[] entries;
+
+        /**
+         * Prepares the plan
+         *
+         * @param header The header
+         * @param types The types of the columns
+         * @param factory The factory for records
+         */
+        private WritePlan(String[] header, Schema.Type[] types, RecordBuilderFactory factory) {
+            this.header = header;
+            this.types = types.clone();
+            this.entries = new Schema.Entry[header.length];
+            for (int i = 0; i < header.length; i++) {
+                this.entries[i] = factory.newEntryBuilder()
+                        .withName(header[i])
+                        .withType(types[i])
+                        .withNullable(true)
+                        .build();
+            }
+        }
+    }
 }
@@ -18,8 +18,6 @@
  */
 package org.deidentifier.arx.talend.processor;
 
-import java.util.List;
-
 import org.deidentifier.arx.AttributeType;
 import org.deidentifier.arx.Data;
 import org.deidentifier.arx.DataHandle;
@@ -47,19 +45,18 @@ public class OperationRiskAssessment {
     /**
      * Calculate the different risk values for the dataset.
      *
-     * @param data List<String[]> data
+     * @param data DataBuffer data
      * @return
      */
-    public ParametersRisk calculate(List<String[]> data) {
+    public ParametersRisk calculate(DataBuffer data) {
 
-        // Create ARX data object from previously filled rowList object
-        Data arxData = Data.create(data);
+        // Create ARX data object from the quasi-identifiers of the previously filled buffer
+        int[] qis = thresholds.getQiIndices(data.getHeader());
+        Data arxData = Data.create(data.iterator(qis));
 
         // Configure QI settings
-        for (ParametersRisk.QIValue qi : this.thresholds.getQis()) {
-            if(qi.isQi()) {
-                arxData.getDefinition().setAttributeType(qi.getField(), AttributeType.QUASI_IDENTIFYING_ATTRIBUTE);
-            }
+        for (int qi : qis) {
+            arxData.getDefinition().setAttributeType(data.getHeader()[qi], AttributeType.QUASI_IDENTIFYING_ATTRIBUTE);
         }
 
         // Prepare input, estimator, and output variables
@@ -77,4 +74,41 @@ public class OperationRiskAssessment {
 
         return result;
     }
+
+    /**
+     * Returns the different risk values of the records added to the streaming assessor,
+     * in the same form as {@link #calculate(DataBuffer)}.
+     *
+     * @param assessor StreamingRiskAssessor
+     * @return ParametersRisk
+     */
+    public ParametersRisk calculate(StreamingRiskAssessor assessor) {
+        return getResult(assessor.getRisks(thresholds.getHighestRisk()));
+    }
+
+    /**
+     * Returns the different risk values of the equivalence classes, matching codes of
+     * {@link EquivalenceClasses#WILDCARD} as wildcards, in the same form as
+     * {@link #calculate(DataBuffer)}.
+     *
+     * @param classes EquivalenceClasses
+     * @return ParametersRisk
+     */
+    public ParametersRisk calculate(EquivalenceClasses classes) {
+        return getResult(classes.getRisksWildcard(thresholds.getHighestRisk()));
+    }
+
+    /**
+     * Returns the risk values in the same form as {@link #calculate(DataBuffer)}.
+     *
+     * @param risks The risks counted without ARX
+     * @return ParametersRisk
+     */
+    private ParametersRisk getResult(ParametersRisk risks) {
+        ParametersRisk result = new ParametersRisk();
+        result.setHighestRisk(thresholds.getHighestRisk()); // as above, the highest risk is only used as threshold
+        result.setRecordsAtRisk(risks.getRecordsAtRisk());
+        result.setAverageRisk(risks.getAverageRisk());
+        return result;
+    }
 }
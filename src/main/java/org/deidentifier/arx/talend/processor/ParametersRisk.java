@@ -8,6 +8,7 @@ import org.talend.sdk.component.api.meta.Documentation;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.talend.sdk.component.api.configuration.ui.layout.GridLayout.FormType.MAIN;
@@ -63,6 +64,21 @@ public class ParametersRisk implements Serializable {
                 this.highestRisk <= thresholds.highestRisk;
     }
 
+    /**
+     * Returns the indices of the quasi-identifiers in the given header. Fields
+     * which are not contained in the header are ignored.
+     * @param  header String[]
+     * @return int[]
+     */
+    public int[] getQiIndices(String[] header) {
+        List<String> fields = Arrays.asList(header);
+        return this.qis.stream()
+                .filter(QIValue::isQi)
+                .mapToInt(qi -> fields.indexOf(qi.getField()))
+                .filter(index -> index != -1)
+                .toArray();
+    }
+
     @Data
     @Documentation("Object defining each Quasi-Identification Field")
     public static class QIValue  implements Serializable{
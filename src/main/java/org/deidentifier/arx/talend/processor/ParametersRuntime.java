@@ -40,7 +40,35 @@ import static org.talend.sdk.component.api.configuration.ui.layout.GridLayout.Fo
     @GridLayout.Row({ "snapshotSizeDataset" }),
     @GridLayout.Row({ "snapshotSizeSnapshot" }),
     @GridLayout.Row({ "cacheSize" }),
-    @GridLayout.Row({ "blockSize" })
+    @GridLayout.Row({ "blockSize" }),
+    @GridLayout.Row({ "threads" }),
+    @GridLayout.Row({ "emissionOrder" }),
+    @GridLayout.Row({ "pipelined" }),
+    @GridLayout.Row({ "maxBlocksInFlight" }),
+    @GridLayout.Row({ "spillThreshold" }),
+    @GridLayout.Row({ "spillDirectory" }),
+    @GridLayout.Row({ "warmStart" }),
+    @GridLayout.Row({ "preCheck" }),
+    @GridLayout.Row({ "outputFormat" }),
+    @GridLayout.Row({ "streamingAssessment" }),
+    @GridLayout.Row({ "partitionField" }),
+    @GridLayout.Row({ "maxBufferedRows" }),
+    @GridLayout.Row({ "adaptiveBlockSize" }),
+    @GridLayout.Row({ "targetBlockSeconds" }),
+    @GridLayout.Row({ "minBlockSize" }),
+    @GridLayout.Row({ "maxBlockSize" }),
+    @GridLayout.Row({ "jobDeadlineSeconds" }),
+    @GridLayout.Row({ "expectedRows" }),
+    @GridLayout.Row({ "splitOnFailure" }),
+    @GridLayout.Row({ "recoverySeconds" }),
+    @GridLayout.Row({ "distributedAssessment" }),
+    @GridLayout.Row({ "recordRouting" }),
+    @GridLayout.Row({ "flushAgeMillis" }),
+    @GridLayout.Row({ "minFlushRows" }),
+    @GridLayout.Row({ "sampleFraction" }),
+    @GridLayout.Row({ "minSampleRows" }),
+    @GridLayout.Row({ "sampleSeed" }),
+    @GridLayout.Row({ "jmxMonitoring" })
 })
 @Documentation("Provide the Additional Advanced Settings for the Runtime")
 /**
@@ -53,6 +81,14 @@ public class ParametersRuntime implements Serializable {
         ANONYMIZE,
         ASSESS
     }
+    public enum EmissionOrder {
+        INPUT,
+        COMPLETION
+    }
+    public enum OutputFormat {
+        JSON,
+        RECORD
+    }
     /** Default value*/
     private static final Mode    DEFAULT_MODE = Mode.ANONYMIZE;
     /** Default value*/
@@ -69,6 +105,58 @@ public class ParametersRuntime implements Serializable {
     private static final  double DEFAULT_SNAPSHOT_SIZE_SNAPSHOT = 0.8d;
     /** Default value*/
     private static final  int    DEFAULT_CACHE_SIZE = 200;
+    /** Default value*/
+    private static final  int    DEFAULT_THREADS = 1;
+    /** Default value*/
+    private static final EmissionOrder DEFAULT_EMISSION_ORDER = EmissionOrder.INPUT;
+    /** Default value*/
+    private static final  boolean DEFAULT_PIPELINED = false;
+    /** Default value*/
+    private static final  int    DEFAULT_MAX_BLOCKS_IN_FLIGHT = 2;
+    /** Default value*/
+    private static final  int    DEFAULT_SPILL_THRESHOLD = 0;
+    /** Default value*/
+    private static final  boolean DEFAULT_WARM_START = false;
+    /** Default value*/
+    private static final  boolean DEFAULT_PRE_CHECK = false;
+    /** Default value*/
+    private static final OutputFormat DEFAULT_OUTPUT_FORMAT = OutputFormat.JSON;
+    /** Default value*/
+    private static final  boolean DEFAULT_STREAMING_ASSESSMENT = false;
+    /** Default value*/
+    private static final  int    DEFAULT_MAX_BUFFERED_ROWS = 0;
+    /** Default value*/
+    private static final  boolean DEFAULT_ADAPTIVE_BLOCK_SIZE = false;
+    /** Default value*/
+    private static final  int    DEFAULT_TARGET_BLOCK_SECONDS = 10;
+    /** Default value*/
+    private static final  int    DEFAULT_MIN_BLOCK_SIZE = 1000;
+    /** Default value*/
+    private static final  int    DEFAULT_MAX_BLOCK_SIZE = 100000;
+    /** Default value*/
+    private static final  int    DEFAULT_JOB_DEADLINE_SECONDS = 0;
+    /** Default value*/
+    private static final  long   DEFAULT_EXPECTED_ROWS = 0L;
+    /** Default value*/
+    private static final  boolean DEFAULT_SPLIT_ON_FAILURE = false;
+    /** Default value*/
+    private static final  int    DEFAULT_RECOVERY_SECONDS = 60;
+    /** Default value*/
+    private static final  boolean DEFAULT_DISTRIBUTED_ASSESSMENT = false;
+    /** Default value*/
+    private static final  boolean DEFAULT_RECORD_ROUTING = false;
+    /** Default value*/
+    private static final  int    DEFAULT_FLUSH_AGE_MILLIS = 0;
+    /** Default value*/
+    private static final  int    DEFAULT_MIN_FLUSH_ROWS = 0;
+    /** Default value*/
+    private static final  double DEFAULT_SAMPLE_FRACTION = 0d;
+    /** Default value*/
+    private static final  long   DEFAULT_SAMPLE_SEED = 0L;
+    /** Default value*/
+    private static final  int    DEFAULT_MIN_SAMPLE_ROWS = 10000;
+    /** Default value*/
+    private static final  boolean DEFAULT_JMX_MONITORING = false;
 
 
     @Option("Mode")
@@ -103,6 +191,118 @@ public class ParametersRuntime implements Serializable {
     @Documentation("The block size used for row blocking. Set to zero to deactivate row-blocking")
     private int blockSize = DEFAULT_BLOCK_SIZE;
 
+    @Option("threads")
+    @Documentation("The number of threads used to process blocks in parallel. Only used with row-blocking or partitioning")
+    private int threads = DEFAULT_THREADS;
+
+    @Option("emissionOrder")
+    @Documentation("Whether blocks processed in parallel are emitted in the order of the input or in the order of their completion")
+    private EmissionOrder emissionOrder = DEFAULT_EMISSION_ORDER;
+
+    @Option("pipelined")
+    @Documentation("Process blocks in the background while the next block is buffered. Only used with row-blocking")
+    private boolean pipelined = DEFAULT_PIPELINED;
+
+    @Option("maxBlocksInFlight")
+    @Documentation("The maximum number of blocks processed in the background or waiting to be emitted, when pipelining. Further input is blocked until a block has been emitted")
+    private int maxBlocksInFlight = DEFAULT_MAX_BLOCKS_IN_FLIGHT;
+
+    @Option("spillThreshold")
+    @Documentation("The heap size in MB after which buffered rows are spilled to disk. Only used without row-blocking. Set to zero to deactivate spilling")
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+
+    @Option("spillDirectory")
+    @Documentation("The directory for spilled rows. Defaults to the temporary directory")
+    private String spillDirectory;
+
+    @Option("warmStart")
+    @Documentation("Try the transformation chosen for the previous block first and only search for a new one, if it does not satisfy the thresholds")
+    private boolean warmStart = DEFAULT_WARM_START;
+
+    @Option("preCheck")
+    @Documentation("Check the risks of each block before anonymizing it and pass blocks which already satisfy the thresholds on unchanged. Skipped for more than 64 quasi-identifiers")
+    private boolean preCheck = DEFAULT_PRE_CHECK;
+
+    @Option("outputFormat")
+    @Documentation("Whether rows are emitted as JSON objects or as records")
+    private OutputFormat outputFormat = DEFAULT_OUTPUT_FORMAT;
+
+    @Option("streamingAssessment")
+    @Documentation("Assess the risks while rows are buffered, without passing them to ARX. Only used in the assess mode")
+    private boolean streamingAssessment = DEFAULT_STREAMING_ASSESSMENT;
+
+    @Option("partitionField")
+    @Documentation("The field by which rows are grouped into separate blocks before they are processed. Leave empty to deactivate partitioning")
+    private String partitionField;
+
+    @Option("maxBufferedRows")
+    @Documentation("The maximum number of rows buffered across all partitions. The largest partition is processed when it is exceeded. Set to zero for no limit")
+    private int maxBufferedRows = DEFAULT_MAX_BUFFERED_ROWS;
+
+    @Option("adaptiveBlockSize")
+    @Documentation("Adapt the block size to the time needed for anonymizing recent blocks and to the free heap. The block size is used for the first block. Only used with row-blocking")
+    private boolean adaptiveBlockSize = DEFAULT_ADAPTIVE_BLOCK_SIZE;
+
+    @Option("targetBlockSeconds")
+    @Documentation("The time in seconds in which a block should be processed, when adapting the block size")
+    private int targetBlockSeconds = DEFAULT_TARGET_BLOCK_SECONDS;
+
+    @Option("minBlockSize")
+    @Documentation("The minimum block size, when adapting the block size")
+    private int minBlockSize = DEFAULT_MIN_BLOCK_SIZE;
+
+    @Option("maxBlockSize")
+    @Documentation("The maximum block size, when adapting the block size")
+    private int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
+
+    @Option("jobDeadlineSeconds")
+    @Documentation("The time in seconds in which all blocks should be anonymized. The remaining time is distributed across the remaining blocks and replaces the seconds per iteration. Set to zero to deactivate the deadline")
+    private int jobDeadlineSeconds = DEFAULT_JOB_DEADLINE_SECONDS;
+
+    @Option("expectedRows")
+    @Documentation("The expected number of rows of the job, used for distributing the time until the deadline. Set to zero if unknown")
+    private long expectedRows = DEFAULT_EXPECTED_ROWS;
+
+    @Option("splitOnFailure")
+    @Documentation("Split blocks which cannot be anonymized into halves and retry, instead of suppressing them completely. With row-blocking, a last block smaller than half the block size is merged with the previous block")
+    private boolean splitOnFailure = DEFAULT_SPLIT_ON_FAILURE;
+
+    @Option("recoverySeconds")
+    @Documentation("The time in seconds after which no further blocks are split, when splitting blocks which cannot be anonymized")
+    private int recoverySeconds = DEFAULT_RECOVERY_SECONDS;
+
+    @Option("distributedAssessment")
+    @Documentation("In the assess mode, pass all records on and emit a summary of the equivalence classes of each group on the Summary output instead of assessing blocks. The component does not decide whether the whole data satisfies the thresholds: the summaries of all workers have to be merged with RiskSummaryCombineFn in the pipeline, as described in the README")
+    private boolean distributedAssessment = DEFAULT_DISTRIBUTED_ASSESSMENT;
+
+    @Option("recordRouting")
+    @Documentation("In the assess mode, pass only the records whose risk is above the highest risk threshold to the Error output and all other records to the main output, instead of passing on whole blocks. The equivalence classes are counted while buffering and the risks are assessed from these counts. Supports at most 64 quasi-identifiers")
+    private boolean recordRouting = DEFAULT_RECORD_ROUTING;
+
+    @Option("flushAgeMillis")
+    @Documentation("The age in milliseconds of its oldest row after which a partial block is processed. This is a best-effort threshold, not a bound on the latency: the age is only checked when a record arrives, so that a partial block waits for the next record or the end of the group. Set to zero to process blocks only when they are full or the group ends")
+    private int flushAgeMillis = DEFAULT_FLUSH_AGE_MILLIS;
+
+    @Option("minFlushRows")
+    @Documentation("The minimal number of rows of a partial block processed because of its age. Smaller blocks are carried forward until enough rows arrive. At least the minimal class size implied by the highest risk threshold is used")
+    private int minFlushRows = DEFAULT_MIN_FLUSH_ROWS;
+
+    @Option("sampleFraction")
+    @Documentation("The fraction of the rows of a block on which the transformation is searched, before it is applied to the whole block. The sample is stratified by the equivalence classes. Set to zero to search on the whole block")
+    private double sampleFraction = DEFAULT_SAMPLE_FRACTION;
+
+    @Option("minSampleRows")
+    @Documentation("The minimal number of rows of a block, for which the transformation is searched on a sample. Smaller blocks are searched completely, as the classes of their samples are too small to be representative")
+    private int minSampleRows = DEFAULT_MIN_SAMPLE_ROWS;
+
+    @Option("sampleSeed")
+    @Documentation("The seed for drawing the samples, so that the same blocks always yield the same samples")
+    private long sampleSeed = DEFAULT_SAMPLE_SEED;
+
+    @Option("jmxMonitoring")
+    @Documentation("Register a bean with the platform MBean server for each processor, which exposes its progress and statistics via JMX while it runs")
+    private boolean jmxMonitoring = DEFAULT_JMX_MONITORING;
+
     @Option
     @Documentation("Incoming Schema of the Plugin")
     @Structure(discoverSchema = "guessTableSchema",type= Structure.Type.IN)
@@ -118,4 +318,131 @@ public class ParametersRuntime implements Serializable {
     public boolean doRowBlocking() {
         return blockSize > 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Return, if buffered rows are spilled to disk. This is the case, if the
+     * spill threshold is greater than zero.
+     * @see #getSpillThreshold()
+     * @return boolean
+     */
+    public boolean doSpilling() {
+        return spillThreshold > 0;
+    }
+
+    /**
+     * Return, if the block size is adapted at runtime. This is the case, if
+     * row blocking and adaptive block sizes are enabled.
+     * @see #doRowBlocking()
+     * @return boolean
+     */
+    public boolean doAdaptiveBlocking() {
+        return doRowBlocking() && adaptiveBlockSize;
+    }
+
+    /**
+     * Return, if partial blocks are processed once their oldest row reaches
+     * the flush age, when the next record arrives. This is the case, if the
+     * age is greater than zero.
+     * @see #getFlushAgeMillis()
+     * @return boolean
+     */
+    public boolean hasFlushAge() {
+        return flushAgeMillis > 0;
+    }
+
+    /**
+     * Return, if the transformation is searched on a sample of each block. This
+     * is the case, if the sample fraction is greater than zero and less than one.
+     * @see #getSampleFraction()
+     * @return boolean
+     */
+    public boolean doSampling() {
+        return sampleFraction > 0d && sampleFraction < 1d;
+    }
+
+    /**
+     * Return, if the transformation is searched on a sample of a block with the
+     * given number of rows. This is the case, if sampling is enabled and the block
+     * has at least the minimal number of rows for sampling.
+     * @see #doSampling()
+     * @see #getMinSampleRows()
+     * @param rows The number of rows of the block
+     * @return boolean
+     */
+    public boolean doSampling(int rows) {
+        return doSampling() && rows >= minSampleRows;
+    }
+
+    /**
+     * Return, if a deadline is set for the job. This is the case, if the
+     * deadline is greater than zero.
+     * @see #getJobDeadlineSeconds()
+     * @return boolean
+     */
+    public boolean hasJobDeadline() {
+        return jobDeadlineSeconds > 0;
+    }
+
+    /**
+     * Return, if a block is held back until the next block has been buffered, so that
+     * a small last block can be merged with it. This is the case, if blocks are split on
+     * failure in the anonymization mode, with row-blocking but without partitioning.
+     * @return boolean
+     */
+    public boolean doHoldBack() {
+        return splitOnFailure && mode == Mode.ANONYMIZE && doRowBlocking() && !doPartitioning();
+    }
+
+    /**
+     * Return, if summaries of the equivalence classes are emitted for merging
+     * them with the summaries of other workers. This is the case in the assess
+     * mode, if distributed assessment is enabled.
+     * @see RiskSummary
+     * @return boolean
+     */
+    public boolean doDistributedAssessment() {
+        return distributedAssessment && mode == Mode.ASSESS;
+    }
+
+    /**
+     * Return, if records are routed to the outputs by their own risk instead of
+     * the risks of their block. This is the case in the assess mode, if record
+     * routing is enabled and the assessment is not distributed.
+     * @see #doDistributedAssessment()
+     * @return boolean
+     */
+    public boolean doRecordRouting() {
+        return recordRouting && mode == Mode.ASSESS && !doDistributedAssessment();
+    }
+
+    /**
+     * Return, if rows are grouped into partitions. This is the case, if a
+     * partition field is set.
+     * @see #getPartitionField()
+     * @return boolean
+     */
+    public boolean doPartitioning() {
+        return partitionField != null && !partitionField.isEmpty();
+    }
+
+    /**
+     * Return, if blocks are processed in the background. This is the case, if
+     * row blocking or partitioning is enabled and either pipelining is enabled
+     * or more than one thread is configured.
+     * @see #doRowBlocking()
+     * @see #doPartitioning()
+     * @return boolean
+     */
+    public boolean doAsynchronousProcessing() {
+        return (doRowBlocking() || doPartitioning()) && (pipelined || threads > 1);
+    }
+
+    /**
+     * Return the maximum number of blocks which are processed in the background
+     * or waiting to be emitted, before further input is blocked.
+     * @return int
+     */
+    public int getMaxPendingBlocks() {
+        return pipelined ? Math.max(1, maxBlocksInFlight) : threads;
+    }
+}
@@ -18,30 +18,84 @@
  */
 package org.deidentifier.arx.talend.processor;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This class encapsulates the parameters related to statistics.
+ * This class encapsulates the parameters related to statistics. All values are
+ * accumulated atomically, so that instances may be updated from several threads,
+ * and statistics collected separately, e.g. per block, can be merged.
  * @author Fabian Prasser
  * @author Helmut Spengler
  * @author Florian Wiedner
  *
  */
 public class ParametersStatistics {
+    /**
+     * The phases of processing, for which latencies are tracked.
+     */
+    public enum Phase {
+        /** Reading a record into the buffer */
+        READ,
+        /** Building the ARX data object of a block */
+        BUILD,
+        /** Searching for a transformation of a block */
+        ANONYMIZE,
+        /** Optimizing the output of a block */
+        OPTIMIZE,
+        /** Converting the output of ARX to a buffer */
+        CONVERT,
+        /** Passing a block to the next step of the transformation */
+        EMIT
+    }
+
     /** The number of suppressed cells. */
-    private long suppressedCells = 0;
+    private final LongAdder suppressedCells = new LongAdder();
 
     /** The total number of cells. */
-    private long totalCells = 0;
+    private final LongAdder totalCells = new LongAdder();
+
+    /** The number of processed blocks. */
+    private final LongAdder blocks = new LongAdder();
+
+    /** The number of rows of the processed blocks. */
+    private final LongAdder rows = new LongAdder();
+
+    /** The number of rows of the blocks for which risks have been tracked. */
+    private final LongAdder riskRows = new LongAdder();
+
+    /** The average risks, weighted by the number of rows. */
+    private final DoubleAdder averageRisk = new DoubleAdder();
 
-    /** Milliseconds elapsed since data processing started. */
-    private long millis;
+    /** The records at risk, weighted by the number of rows. */
+    private final DoubleAdder recordsAtRisk = new DoubleAdder();
 
-    /** The risk results for each processed block. */
-    private Map<ParametersRisk, Long> risks = new HashMap<>();
+    /** The highest risk. */
+    private final DoubleAccumulator highestRisk = new DoubleAccumulator(Math::max, 0d);
+
+    /** The quasi-identifiers of the tracked risks. */
+    private final AtomicReference<List<ParametersRisk.QIValue>> qis = new AtomicReference<>();
+
+    /** The largest number of bytes allocated off-heap for counting equivalence classes of a block. */
+    private final LongAccumulator peakClassFootprint = new LongAccumulator(Math::max, 0L);
+
+    /** The latencies of each phase. */
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+
+    /**
+     * Constructor.
+     */
+    public ParametersStatistics() {
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+        }
+    }
 
     /**
      * Return the overall fraction of suppressed cells.
@@ -49,7 +103,16 @@ public class ParametersStatistics {
      * @return The Fraction of Suppressed Cells
      */
     public double getFractionOfSuppressedCells() {
-        return (double) suppressedCells / (double) totalCells;
+        return (double) suppressedCells.sum() / (double) totalCells.sum();
+    }
+
+    /**
+     * Return the number of suppressed cells.
+     *
+     * @return long
+     */
+    public long getNumSuppressedCells() {
+        return suppressedCells.sum();
     }
 
     /**
@@ -61,51 +124,86 @@ public class ParametersStatistics {
     public ParametersRisk getRisks() throws Exception {
 
         // Check
-        if (this.risks.isEmpty()) {
+        long total = riskRows.sum();
+        if (qis.get() == null) {
             throw new Exception("No statistics stored");
         }
 
-        // Prepare
-        double recordsAtRisk = 0d;
-        double highestRisk = 0d;
-        double averageRisk = 0d;
-        long total = 0;
-        for (Long weight : risks.values()) {
-            total += weight;
-        }
-
-        // Calculate average
-        for (Entry<ParametersRisk, Long> entry : risks.entrySet()) {
-            averageRisk += entry.getKey().getAverageRisk() * entry.getValue();
-            highestRisk = Math.max(highestRisk,  entry.getKey().getHighestRisk());
-            recordsAtRisk += entry.getKey().getRecordsAtRisk() * entry.getValue();
-        }
-        recordsAtRisk /= total;
-        averageRisk /= total;
-
         // Return
         ParametersRisk result = new ParametersRisk();
-        result.setQis(risks.keySet().iterator().next().getQis());
-        result.setRecordsAtRisk(recordsAtRisk);
-        result.setHighestRisk(highestRisk);
-        result.setAverageRisk(averageRisk);
+        result.setQis(qis.get());
+        result.setRecordsAtRisk(total == 0 ? 0d : recordsAtRisk.sum() / total);
+        result.setHighestRisk(highestRisk.get());
+        result.setAverageRisk(total == 0 ? 0d : averageRisk.sum() / total);
         return result;
     }
 
+    /**
+     * Return the number of processed blocks.
+     *
+     * @return long
+     */
+    public long getNumBlocks() {
+        return blocks.sum();
+    }
 
     /**
-     * Start timing
+     * Return the number of rows of the processed blocks.
+     *
+     * @return long
      */
-    public void startTiming() {
-        this.millis = System.currentTimeMillis();
+    public long getNumRows() {
+        return rows.sum();
     }
 
     /**
-     * Stop timing
+     * Return the largest number of bytes allocated off-heap for counting the
+     * equivalence classes of a block.
+     *
      * @return long
      */
-    public long stopTiming() {
-        return System.currentTimeMillis() - millis;
+    public long getPeakClassFootprint() {
+        return peakClassFootprint.get();
+    }
+
+    /**
+     * Return the latencies of a phase.
+     *
+     * @param phase The phase
+     * @return LatencyHistogram
+     */
+    public LatencyHistogram getLatencies(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    /**
+     * Tracks a processed block.
+     *
+     * @param numRows Number of Rows
+     */
+    public void trackBlock(long numRows) {
+        this.blocks.increment();
+        this.rows.add(numRows);
+    }
+
+    /**
+     * Tracks the number of bytes allocated off-heap for counting the equivalence
+     * classes of a block.
+     *
+     * @param footprint The number of bytes
+     */
+    public void trackClassFootprint(long footprint) {
+        this.peakClassFootprint.accumulate(footprint);
+    }
+
+    /**
+     * Tracks the duration of a phase.
+     *
+     * @param phase The phase
+     * @param nanos The duration in nanoseconds
+     */
+    public void trackLatency(Phase phase, long nanos) {
+        this.latencies.get(phase).record(nanos);
     }
 
     /**
@@ -115,7 +213,11 @@ public class ParametersStatistics {
      * @param numRows Number of Rows
      */
     public void trackRisks(ParametersRisk risks, long numRows) {
-        this.risks.put(risks, numRows);
+        this.qis.compareAndSet(null, risks.getQis());
+        this.riskRows.add(numRows);
+        this.averageRisk.add(risks.getAverageRisk() * numRows);
+        this.recordsAtRisk.add(risks.getRecordsAtRisk() * numRows);
+        this.highestRisk.accumulate(risks.getHighestRisk());
     }
 
     /**
@@ -124,17 +226,41 @@ public class ParametersStatistics {
      * @param input Input
      * @param output Output
      */
-    public void trackSuppressedCells(List<String[]> input, List<String[]> output) {
-        // Skip header
-        for (int row = 1; row < output.size(); row++) {
-            String[] outArray = output.get(row);
-            String[] inArray = input.get(row);
-            for (int column = 0; column < outArray.length; column++) {
-                suppressedCells += outArray[column].equals(OperationDataTransformer.MAGIC_NULL_VALUE) &&
-                        !inArray[column].equals(OperationDataTransformer.MAGIC_NULL_VALUE)? 1 : 0;
-                totalCells++;
+    public void trackSuppressedCells(DataBuffer input, DataBuffer output) {
+        long suppressed = 0;
+        for (int column = 0; column < output.getNumColumns(); column++) {
+            // Columns taken over from the input contain no suppressed cells
+            if (output.isShared(input, column)) {
+                continue;
+            }
+            for (int row = 0; row < output.getNumRows(); row++) {
+                suppressed += output.isNull(row, column) && !input.isNull(row, column) ? 1 : 0;
             }
         }
+        this.suppressedCells.add(suppressed);
+        this.totalCells.add((long) output.getNumRows() * output.getNumColumns());
     }
 
+    /**
+     * Adds all statistics of another object, e.g. of a single block or worker.
+     *
+     * @param other The other statistics
+     */
+    public void merge(ParametersStatistics other) {
+        this.suppressedCells.add(other.suppressedCells.sum());
+        this.totalCells.add(other.totalCells.sum());
+        this.blocks.add(other.blocks.sum());
+        this.rows.add(other.rows.sum());
+        this.riskRows.add(other.riskRows.sum());
+        this.averageRisk.add(other.averageRisk.sum());
+        this.recordsAtRisk.add(other.recordsAtRisk.sum());
+        this.highestRisk.accumulate(other.highestRisk.get());
+        if (other.qis.get() != null) {
+            this.qis.compareAndSet(null, other.qis.get());
+        }
+        this.peakClassFootprint.accumulate(other.peakClassFootprint.get());
+        for (Phase phase : Phase.values()) {
+            this.latencies.get(phase).merge(other.latencies.get(phase));
+        }
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This interface describes the events emitted by the processor. Events are recorded
+ * by the Java Flight Recorder, if the running Java version provides it, i.e. as of
+ * Java 1.8.0_262. Otherwise, all events are disabled and do nothing. Events which
+ * are not recorded cost a single check of {@link #isEnabled()}.
+ * @author Florian Wiedner
+ */
+public interface ProcessingEvent {
+    /** The search mode, if ARX searches the full solution space */
+    String OPTIMAL = "optimal";
+
+    /** The search mode, if ARX searches heuristically */
+    String HEURISTIC = "heuristic";
+
+    /** The search mode, if no search is performed */
+    String NONE = "none";
+
+    /**
+     * The types of events.
+     */
+    enum Type {
+        /** Buffering of a single record. Disabled by default, as it is emitted per record */
+        BUFFERIZE,
+        /** Processing of a block, including waiting for and emitting completed blocks */
+        ROW_PROCESSING,
+        /** Cell suppression of a block */
+        CELL_SUPPRESSION,
+        /** Optimization of the output of ARX */
+        OPTIMIZE,
+        /** Passing a block to the next step of the transformation */
+        WRITE
+    }
+
+    /**
+     * Creates the events of each type.
+     */
+    interface Factory {
+        /**
+         * Returns a new event.
+         *
+         * @param type The type
+         * @return ProcessingEvent
+         */
+        ProcessingEvent create(Type type);
+    }
+
+    /**
+     * Returns a new event of the given type, or an event which does nothing, if the
+     * flight recorder is not available.
+     *
+     * @param type The type
+     * @return ProcessingEvent
+     */
+    static ProcessingEvent create(Type type) {
+        return ProcessingEvents.FACTORY.create(type);
+    }
+
+    /**
+     * Starts the timing of the event.
+     */
+    void begin();
+
+    /**
+     * Ends the timing of the event.
+     */
+    void end();
+
+    /**
+     * Writes the event, if enabled and within the thresholds.
+     */
+    void commit();
+
+    /**
+     * Returns whether the event is enabled.
+     *
+     * @return boolean
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns whether the event is enabled and within the thresholds, so that the
+     * fields only need to be set in this case.
+     *
+     * @return boolean
+     */
+    boolean shouldCommit();
+
+    /**
+     * Sets the fields describing the block.
+     *
+     * @param blockSize The number of rows of the block
+     * @param qiCount The number of quasi-identifiers
+     * @param searchMode The search mode
+     */
+    void set(int blockSize, int qiCount, String searchMode);
+
+    /**
+     * Adds to the number of suppressed cells.
+     *
+     * @param cells The number of cells
+     */
+    void addSuppressedCells(long cells);
+}
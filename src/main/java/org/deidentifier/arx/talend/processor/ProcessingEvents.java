@@ -0,0 +1,84 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This class selects the implementation of the events. The events of the flight
+ * recorder are only loaded, if the flight recorder is available, so that the
+ * processor also runs on older Java versions.
+ * @author Florian Wiedner
+ */
+class ProcessingEvents {
+    /** The name of the base class of the events of the flight recorder */
+    private static final String JFR_EVENT = "jdk.jfr.Event";
+
+    /** The name of the factory of the events of the flight recorder */
+    private static final String JFR_FACTORY = "org.deidentifier.arx.talend.processor.FlightRecorderEvents";
+
+    /** The event which does nothing, if the flight recorder is not available */
+    static final ProcessingEvent DISABLED = new ProcessingEvent() {
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public boolean shouldCommit() {
+            return false;
+        }
+
+        @Override
+        public void set(int blockSize, int qiCount, String searchMode) {
+        }
+
+        @Override
+        public void addSuppressedCells(long cells) {
+        }
+    };
+
+    /** The factory of the events */
+    static final ProcessingEvent.Factory FACTORY = getFactory();
+
+    /**
+     * Returns the factory of the events of the flight recorder, if available, else
+     * a factory returning {@link #DISABLED}.
+     *
+     * @return ProcessingEvent.Factory
+     */
+    private static ProcessingEvent.Factory getFactory() {
+        ClassLoader loader = ProcessingEvents.class.getClassLoader();
+        try {
+            Class.forName(JFR_EVENT, false, loader);
+            return (ProcessingEvent.Factory) Class.forName(JFR_FACTORY, true, loader).newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return type -> DISABLED;
+        }
+    }
+}
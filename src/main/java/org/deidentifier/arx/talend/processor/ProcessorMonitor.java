@@ -0,0 +1,183 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class exposes the progress of a processor via JMX. Counters are read from
+ * the statistics of the processor, while the state of the buffer is published by
+ * the processor from time to time, so that reading attributes never touches
+ * structures which are not thread-safe.
+ * @author Florian Wiedner
+ */
+public class ProcessorMonitor implements ProcessorMonitorMBean {
+    /** The logger, for failures of the registration */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessorMonitor.class);
+
+    /** The domain of the object names */
+    private static final String DOMAIN = "org.deidentifier.arx.talend";
+
+    /** The statistics of the processor */
+    private final ParametersStatistics statistics;
+
+    /** The time of creation, as returned by {@link System#nanoTime()} */
+    private final long start = System.nanoTime();
+
+    /** The name under which this object is registered, null if not registered */
+    private ObjectName name;
+
+    /** The number of pending blocks */
+    private volatile int pendingBlocks;
+
+    /** The number of buffered rows */
+    private volatile long bufferedRows;
+
+    /** The estimated heap used by the buffered rows */
+    private volatile long bufferHeapSize;
+
+    /**
+     * Constructor.
+     *
+     * @param statistics The statistics of the processor
+     */
+    public ProcessorMonitor(ParametersStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Registers this object with the platform MBean server. Failures are reported,
+     * but do not affect processing.
+     *
+     * @param id The identifier of the processor
+     */
+    public void register(String id) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=ARXDeidentifier,name=" + ObjectName.quote(id));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            this.name = name;
+        } catch (JMException e) {
+            LOGGER.warn("Monitor not registered: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes this object from the platform MBean server, if registered.
+     */
+    public void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            LOGGER.warn("Monitor not unregistered: {}", e.getMessage());
+        }
+        name = null;
+    }
+
+    /**
+     * Publishes the number of pending blocks.
+     *
+     * @param pendingBlocks The number of pending blocks
+     */
+    public void setPendingBlocks(int pendingBlocks) {
+        this.pendingBlocks = pendingBlocks;
+    }
+
+    /**
+     * Publishes the state of the buffer.
+     *
+     * @param rows The number of buffered rows
+     * @param heapSize The estimated heap used by the buffered rows in bytes
+     */
+    public void setBuffer(long rows, long heapSize) {
+        this.bufferedRows = rows;
+        this.bufferHeapSize = heapSize;
+    }
+
+    @Override
+    public long getRowsRead() {
+        return statistics.getLatencies(ParametersStatistics.Phase.READ).getCount();
+    }
+
+    @Override
+    public long getRowsProcessed() {
+        return statistics.getNumRows();
+    }
+
+    @Override
+    public long getBlocksProcessed() {
+        return statistics.getNumBlocks();
+    }
+
+    @Override
+    public double getReadThroughput() {
+        return getRowsRead() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getThroughput() {
+        return getRowsProcessed() / getElapsedSeconds();
+    }
+
+    @Override
+    public int getPendingBlocks() {
+        return pendingBlocks;
+    }
+
+    @Override
+    public long getBufferedRows() {
+        return bufferedRows;
+    }
+
+    @Override
+    public long getBufferHeapSize() {
+        return bufferHeapSize;
+    }
+
+    @Override
+    public double getFractionOfSuppressedCells() {
+        return statistics.getFractionOfSuppressedCells();
+    }
+
+    @Override
+    public long getPeakClassFootprint() {
+        return statistics.getPeakClassFootprint();
+    }
+
+    @Override
+    public double getLatencyMillis(String phase, double percentile) {
+        return statistics.getLatencies(ParametersStatistics.Phase.valueOf(phase)).getPercentile(percentile) / 1e6d;
+    }
+
+    /**
+     * Returns the time since the creation of this object in seconds.
+     *
+     * @return double
+     */
+    private double getElapsedSeconds() {
+        return Math.max(1e-9d, (System.nanoTime() - start) / 1e9d);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * The management interface of a running processor.
+ * @author Florian Wiedner
+ */
+public interface ProcessorMonitorMBean {
+
+    /**
+     * Returns the number of records read.
+     *
+     * @return long
+     */
+    long getRowsRead();
+
+    /**
+     * Returns the number of rows of the blocks passed on.
+     *
+     * @return long
+     */
+    long getRowsProcessed();
+
+    /**
+     * Returns the number of blocks passed on.
+     *
+     * @return long
+     */
+    long getBlocksProcessed();
+
+    /**
+     * Returns the number of records read per second since the start.
+     *
+     * @return double
+     */
+    double getReadThroughput();
+
+    /**
+     * Returns the number of rows passed on per second since the start.
+     *
+     * @return double
+     */
+    double getThroughput();
+
+    /**
+     * Returns the number of blocks submitted to the workers, which have not been passed on yet.
+     *
+     * @return int
+     */
+    int getPendingBlocks();
+
+    /**
+     * Returns the number of rows buffered.
+     *
+     * @return long
+     */
+    long getBufferedRows();
+
+    /**
+     * Returns an estimate of the heap used by the buffered rows in bytes.
+     *
+     * @return long
+     */
+    long getBufferHeapSize();
+
+    /**
+     * Returns the fraction of suppressed cells of the blocks passed on.
+     *
+     * @return double
+     */
+    double getFractionOfSuppressedCells();
+
+    /**
+     * Returns the peak off-heap memory used for counting equivalence classes per block in bytes.
+     *
+     * @return long
+     */
+    long getPeakClassFootprint();
+
+    /**
+     * Returns a percentile of the latencies of a phase in milliseconds, e.g. the 50th or 99th.
+     *
+     * @param phase The name of the phase, e.g. READ or ANONYMIZE
+     * @param percentile The percentile, 100 for the maximum
+     * @return double
+     */
+    double getLatencyMillis(String phase, double percentile);
+}
@@ -0,0 +1,389 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * This class summarizes the equivalence classes of a part of the data, e.g. of the
+ * records seen by a single worker. It contains the size of each class, keyed by the
+ * values of the quasi-identifiers, with null for values matched as wildcards. As
+ * summaries are merged by adding the sizes, merging is associative and commutative,
+ * and the risks of the merged summary are the risks of the whole data.
+ * The values are coded by a dictionary per quasi-identifier and the sizes are counted
+ * off-heap in a {@link ClassCountTable}. Rows of buffers are added by translating the
+ * codes of the buffer, so that no values are materialised per row.
+ * @author Florian Wiedner
+ */
+public class RiskSummary implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    /** The factory for JSON objects */
+    private static final JsonBuilderFactory JSON = Json.createBuilderFactory(Collections.emptyMap());
+
+    /** The names of the quasi-identifiers, null for an empty summary */
+    private List<String> qis;
+
+    /** The values of each quasi-identifier, indexed by their code */
+    private List<List<String>> values;
+
+    /** The codes of the values of each quasi-identifier */
+    private transient List<Map<String, Integer>> dictionaries;
+
+    /** The sizes of the classes */
+    private transient ClassCountTable sizes;
+
+    /** The codes of this summary plus one, by the codes of each quasi-identifier of a buffer, zero if not yet translated */
+    private transient Map<DataBuffer, int[][]> translations;
+
+    /** The codes of the current class */
+    private transient int[] codes;
+
+    /**
+     * Creates an empty summary, which takes over the quasi-identifiers of the
+     * first summary merged into it.
+     */
+    public RiskSummary() {
+        this.qis = null;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param qis The names of the quasi-identifiers
+     */
+    public RiskSummary(List<String> qis) {
+        initialize(qis);
+    }
+
+    /**
+     * Creates a summary from its JSON representation.
+     *
+     * @param json The JSON object
+     * @return RiskSummary
+     * @see #toJson()
+     */
+    public static RiskSummary of(JsonObject json) {
+        List<String> qis = new ArrayList<>();
+        for (JsonValue qi : json.getJsonArray("qis")) {
+            qis.add(((JsonString) qi).getString());
+        }
+        RiskSummary result = new RiskSummary(qis);
+        for (JsonValue value : json.getJsonArray("classes")) {
+            JsonObject size = (JsonObject) value;
+            JsonArray values = size.getJsonArray("values");
+            List<String> key = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                key.add(values.isNull(i) ? null : values.getString(i));
+            }
+            result.add(key, size.getJsonNumber("count").longValue());
+        }
+        return result;
+    }
+
+    /**
+     * Adds a row of the buffer.
+     *
+     * @param data The buffer
+     * @param row The row
+     * @param indices The indices of the quasi-identifiers
+     */
+    public void add(DataBuffer data, int row, int[] indices) {
+        checkQis();
+        int[][] translation = translations.computeIfAbsent(data, buffer -> new int[indices.length][]);
+        for (int i = 0; i < indices.length; i++) {
+            if (data.isNull(row, indices[i])) {
+                codes[i] = EquivalenceClasses.WILDCARD;
+                continue;
+            }
+            int code = data.getCode(row, indices[i]);
+            if (translation[i] == null || translation[i].length <= code) {
+                int[] grown = new int[Math.max(code + 1, data.getNumDistinctValues(indices[i]))];
+                if (translation[i] != null) {
+                    System.arraycopy(translation[i], 0, grown, 0, translation[i].length);
+                }
+                translation[i] = grown;
+            }
+            if (translation[i][code] == 0) {
+                translation[i][code] = getCode(i, data.getDistinctValue(indices[i], code)) + 1;
+            }
+            codes[i] = translation[i][code] - 1;
+        }
+        sizes.add(codes, 1L);
+    }
+
+    /**
+     * Adds records with the same values of the quasi-identifiers.
+     *
+     * @param values The values, null for wildcards
+     * @param count The number of records
+     */
+    public void add(List<String> values, long count) {
+        checkQis();
+        if (values.size() != qis.size()) {
+            throw new IllegalArgumentException("Expected " + qis.size() + " values, but got " + values.size());
+        }
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = getCode(i, values.get(i));
+        }
+        sizes.add(codes, count);
+    }
+
+    /**
+     * Checks that the quasi-identifiers are known, which is not the case for an
+     * empty summary until another summary has been merged into it.
+     */
+    private void checkQis() {
+        if (qis == null) {
+            throw new IllegalStateException("Records cannot be added to an empty summary without quasi-identifiers");
+        }
+    }
+
+    /**
+     * Adds the classes of another summary to this summary.
+     *
+     * @param other The other summary
+     * @return RiskSummary this summary
+     */
+    public RiskSummary merge(RiskSummary other) {
+        if (other.qis == null) {
+            return this;
+        }
+        if (qis == null) {
+            initialize(other.qis);
+        } else if (!qis.equals(other.qis)) {
+            throw new IllegalArgumentException("Summaries of different quasi-identifiers: " + qis + " and " + other.qis);
+        }
+        // Translate the codes of the other summary once per value, not per class
+        int[][] translation = new int[qis.size()][];
+        for (int i = 0; i < translation.length; i++) {
+            List<String> values = other.values.get(i);
+            translation[i] = new int[values.size()];
+            for (int code = 0; code < values.size(); code++) {
+                translation[i][code] = getCode(i, values.get(code));
+            }
+        }
+        int[] codes = new int[qis.size()];
+        for (long slot = 0; slot < other.sizes.getCapacity(); slot++) {
+            long count = other.sizes.getCount(slot);
+            if (count != 0L) {
+                other.sizes.getCodes(slot, codes);
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = codes[i] == EquivalenceClasses.WILDCARD ? EquivalenceClasses.WILDCARD : translation[i][codes[i]];
+                }
+                sizes.add(codes, count);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the names of the quasi-identifiers, null for an empty summary.
+     *
+     * @return List<String>
+     */
+    public List<String> getQis() {
+        return qis;
+    }
+
+    /**
+     * Returns the number of classes.
+     *
+     * @return int
+     */
+    public int getNumClasses() {
+        return sizes == null ? 0 : (int) sizes.size();
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return long
+     */
+    public long getNumRecords() {
+        return sizes == null ? 0L : sizes.getTotal();
+    }
+
+    /**
+     * Returns the risks of the summarized records, in the same form as
+     * {@link OperationRiskAssessment#calculate(DataBuffer)}.
+     *
+     * @param thresholds The thresholds
+     * @return ParametersRisk
+     */
+    public ParametersRisk getRisks(ParametersRisk thresholds) {
+        EquivalenceClasses classes = new EquivalenceClasses(qis == null ? 0 : qis.size());
+        if (sizes != null) {
+            int[] codes = new int[qis.size()];
+            for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+                long count = sizes.getCount(slot);
+                if (count != 0L) {
+                    sizes.getCodes(slot, codes);
+                    classes.add(codes, count);
+                }
+            }
+        }
+        return new OperationRiskAssessment(thresholds).calculate(classes);
+    }
+
+    /**
+     * Returns the JSON representation of this summary, which can be passed on as a record.
+     *
+     * @return JsonObject
+     */
+    public JsonObject toJson() {
+        JsonArrayBuilder qis = JSON.createArrayBuilder();
+        JsonArrayBuilder classes = JSON.createArrayBuilder();
+        if (this.qis != null) {
+            this.qis.forEach(qis::add);
+            int[] codes = new int[this.qis.size()];
+            for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+                long count = sizes.getCount(slot);
+                if (count == 0L) {
+                    continue;
+                }
+                sizes.getCodes(slot, codes);
+                JsonArrayBuilder values = JSON.createArrayBuilder();
+                for (int i = 0; i < codes.length; i++) {
+                    if (codes[i] == EquivalenceClasses.WILDCARD) {
+                        values.addNull();
+                    } else {
+                        values.add(this.values.get(i).get(codes[i]));
+                    }
+                }
+                classes.add(JSON.createObjectBuilder().add("values", values).add("count", count));
+            }
+        }
+        return JSON.createObjectBuilder().add("qis", qis).add("classes", classes).build();
+    }
+
+    /**
+     * Prepares an empty summary of the given quasi-identifiers.
+     *
+     * @param qis The names of the quasi-identifiers
+     */
+    private void initialize(List<String> qis) {
+        this.qis = new ArrayList<>(qis);
+        this.values = new ArrayList<>();
+        for (int i = 0; i < qis.size(); i++) {
+            this.values.add(new ArrayList<>());
+        }
+        prepare();
+    }
+
+    /**
+     * Prepares the dictionaries and the sizes for the values.
+     */
+    private void prepare() {
+        this.dictionaries = new ArrayList<>();
+        for (List<String> values : this.values) {
+            Map<String, Integer> dictionary = new HashMap<>();
+            for (int code = 0; code < values.size(); code++) {
+                dictionary.put(values.get(code), code);
+            }
+            this.dictionaries.add(dictionary);
+        }
+        this.sizes = new ClassCountTable(qis.size());
+        this.translations = new WeakHashMap<>();
+        this.codes = new int[qis.size()];
+    }
+
+    /**
+     * Returns the code of a value, {@link EquivalenceClasses#WILDCARD} for null values.
+     *
+     * @param qi The quasi-identifier
+     * @param value The value
+     * @return int
+     */
+    private int getCode(int qi, String value) {
+        if (value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE)) {
+            return EquivalenceClasses.WILDCARD;
+        }
+        Integer code = dictionaries.get(qi).get(value);
+        if (code == null) {
+            code = values.get(qi).size();
+            values.get(qi).add(value);
+            dictionaries.get(qi).put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Writes the sizes of the classes, which are held off-heap, after the values.
+     *
+     * @param out The stream
+     * @throws IOException If writing fails
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (qis == null) {
+            return;
+        }
+        out.writeLong(sizes.size());
+        int[] codes = new int[qis.size()];
+        for (long slot = 0; slot < sizes.getCapacity(); slot++) {
+            long count = sizes.getCount(slot);
+            if (count != 0L) {
+                sizes.getCodes(slot, codes);
+                for (int code : codes) {
+                    out.writeInt(code);
+                }
+                out.writeLong(count);
+            }
+        }
+    }
+
+    /**
+     * Reads the values and the sizes of the classes.
+     *
+     * @param in The stream
+     * @throws IOException If reading fails
+     * @throws ClassNotFoundException If a class is missing
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (qis == null) {
+            return;
+        }
+        prepare();
+        long classes = in.readLong();
+        for (long i = 0; i < classes; i++) {
+            for (int j = 0; j < codes.length; j++) {
+                codes[j] = in.readInt();
+            }
+            sizes.add(codes, in.readLong());
+        }
+    }
+}
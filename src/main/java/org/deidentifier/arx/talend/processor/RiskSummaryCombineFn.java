@@ -0,0 +1,89 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.transforms.Combine;
+
+/**
+ * This class merges the summaries emitted by the workers of a Beam pipeline in the
+ * distributed assessment mode and computes the risks of the whole data. The component
+ * itself only emits the summaries, so this function has to be applied by the pipeline:
+ * <pre>{@code
+ * PCollection<ParametersRisk> risks = summaries
+ *         .apply(MapElements.into(TypeDescriptor.of(RiskSummary.class)).via(RiskSummary::of))
+ *         .setCoder(SerializableCoder.of(RiskSummary.class))
+ *         .apply(Combine.globally(new RiskSummaryCombineFn(thresholds)));
+ * PCollection<Boolean> satisfied = risks
+ *         .apply(MapElements.into(TypeDescriptors.booleans()).via(risk -> risk.satisfies(thresholds)));
+ * }</pre>
+ * where {@code summaries} are the JSON objects of the Summary output and
+ * {@code thresholds} are the risk settings of the component.
+ * @author Florian Wiedner
+ */
+public class RiskSummaryCombineFn extends Combine.CombineFn<RiskSummary, RiskSummary, ParametersRisk> {
+    private static final long serialVersionUID = 1L;
+
+    /** The thresholds */
+    private final ParametersRisk thresholds;
+
+    /**
+     * Constructor.
+     *
+     * @param thresholds The thresholds
+     */
+    public RiskSummaryCombineFn(ParametersRisk thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    @Override
+    public RiskSummary createAccumulator() {
+        return new RiskSummary();
+    }
+
+    @Override
+    public RiskSummary addInput(RiskSummary accumulator, RiskSummary input) {
+        return accumulator.merge(input);
+    }
+
+    @Override
+    public RiskSummary mergeAccumulators(Iterable<RiskSummary> accumulators) {
+        RiskSummary result = new RiskSummary();
+        for (RiskSummary accumulator : accumulators) {
+            result.merge(accumulator);
+        }
+        return result;
+    }
+
+    @Override
+    public ParametersRisk extractOutput(RiskSummary accumulator) {
+        return accumulator.getRisks(thresholds);
+    }
+
+    @Override
+    public Coder<RiskSummary> getAccumulatorCoder(CoderRegistry registry, Coder<RiskSummary> inputCoder) {
+        return SerializableCoder.of(RiskSummary.class);
+    }
+
+    @Override
+    public Coder<ParametersRisk> getDefaultOutputCoder(CoderRegistry registry, Coder<RiskSummary> inputCoder) {
+        return SerializableCoder.of(ParametersRisk.class);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class assesses the re-identification risks of records while they arrive,
+ * without materialising them for ARX. Only the sizes of the equivalence classes
+ * of the quasi-identifiers are kept, so that the memory required is bounded by
+ * the number of distinct classes. Null values are matched as wildcards, like the
+ * sample-based wildcard risk model of ARX. Records are either added from a single
+ * buffer, reusing the codes of its dictionaries, or as values, which are then coded
+ * by dictionaries of this object.
+ * @author Florian Wiedner
+ */
+public class StreamingRiskAssessor {
+    /** The codes of the values, per quasi-identifier, null unless records are added as values */
+    private Map<String, Integer>[] dictionaries;
+
+    /** The buffer from which records are added, null unless records are added from a buffer */
+    private DataBuffer source;
+
+    /** The equivalence classes */
+    private final EquivalenceClasses classes;
+
+    /** The codes of the current record */
+    private final int[] codes;
+
+    /** The number of records matched by each class, null if records have been added since the last assessment */
+    private ClassCountTable matches;
+
+    /**
+     * Constructor.
+     *
+     * @param numQis The number of quasi-identifiers, at most 64
+     */
+    public StreamingRiskAssessor(int numQis) {
+        this.classes = new EquivalenceClasses(numQis);
+        this.codes = new int[numQis];
+    }
+
+    /**
+     * Adds the values of the quasi-identifiers of a record.
+     *
+     * @param values The values
+     */
+    public void add(String[] values) {
+        add(values, 1L);
+    }
+
+    /**
+     * Adds the values of the quasi-identifiers of several records with the same values.
+     *
+     * @param values The values
+     * @param count The number of records
+     */
+    public void add(String[] values, long count) {
+        if (source != null) {
+            throw new IllegalStateException("Records have been added from a buffer");
+        }
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = getCode(i, values[i]);
+        }
+        classes.add(codes, count);
+        matches = null;
+    }
+
+    /**
+     * Adds the values of the quasi-identifiers of a row of the buffer.
+     *
+     * @param data The buffer
+     * @param row The row
+     * @param qis The indices of the quasi-identifiers
+     */
+    public void add(DataBuffer data, int row, int[] qis) {
+        if (dictionaries != null || (source != null && source != data)) {
+            throw new IllegalStateException("Records have been added from another source");
+        }
+        source = data;
+        classes.add(getCodes(data, row, qis));
+        matches = null;
+    }
+
+    /**
+     * Returns the risks of all records added so far. Records with a risk above
+     * the given threshold are considered to be at risk.
+     *
+     * @param threshold The highest acceptable risk
+     * @return ParametersRisk
+     */
+    public ParametersRisk getRisks(double threshold) {
+        return classes.getRisksWildcard(getMatches(), threshold);
+    }
+
+    /**
+     * Returns the rows of the buffer which are at risk, reusing the matches of the
+     * classes determined by the last assessment. The rows must have been added to this assessor.
+     *
+     * @param data The buffer
+     * @param qis The indices of the quasi-identifiers
+     * @param threshold The highest acceptable risk
+     * @return BitSet
+     */
+    public BitSet getRowsAtRisk(DataBuffer data, int[] qis, double threshold) {
+        if (source != data && data.getNumRows() != 0) {
+            throw new IllegalArgumentException("The rows have not been added to this assessor");
+        }
+        ClassCountTable matches = getMatches();
+        BitSet result = new BitSet(data.getNumRows());
+        for (int row = 0; row < data.getNumRows(); row++) {
+            long size = matches.get(getCodes(data, row, qis));
+            if (size == 0L || 1d / size > threshold) {
+                result.set(row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of records added so far.
+     *
+     * @return long
+     */
+    public long getNumRecords() {
+        return classes.getNumRecords();
+    }
+
+    /**
+     * Returns the number of bytes allocated off-heap for counting the classes and their matches.
+     *
+     * @return long
+     */
+    public long getFootprint() {
+        return classes.getFootprint() + (matches != null ? matches.getFootprint() : 0L);
+    }
+
+    /**
+     * Returns the number of records matched by each class, which is only determined
+     * again if records have been added since the last call.
+     *
+     * @return ClassCountTable
+     */
+    private ClassCountTable getMatches() {
+        if (matches == null) {
+            matches = classes.getMatchesWildcard();
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the codes of a row of the buffer, {@link EquivalenceClasses#WILDCARD}
+     * for null values.
+     *
+     * @param data The buffer
+     * @param row The row
+     * @param qis The indices of the quasi-identifiers
+     * @return int[]
+     */
+    private int[] getCodes(DataBuffer data, int row, int[] qis) {
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = data.isNull(row, qis[i]) ? EquivalenceClasses.WILDCARD : data.getCode(row, qis[i]);
+        }
+        return codes;
+    }
+
+    /**
+     * Returns the code of a value, {@link EquivalenceClasses#WILDCARD} for null values.
+     *
+     * @param qi The quasi-identifier
+     * @param value The value
+     * @return int
+     */
+    @SuppressWarnings("unchecked")
+    private int getCode(int qi, String value) {
+        if (value == null || value.equals(OperationDataTransformer.MAGIC_NULL_VALUE)) {
+            return EquivalenceClasses.WILDCARD;
+        }
+        if (dictionaries == null) {
+            dictionaries = new Map[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                dictionaries[i] = new HashMap<>();
+            }
+        }
+        Map<String, Integer> dictionary = dictionaries[qi];
+        Integer code = dictionary.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(value, code);
+        }
+        return code;
+    }
+}
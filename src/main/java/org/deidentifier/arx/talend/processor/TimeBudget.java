@@ -0,0 +1,106 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+/**
+ * This class distributes the time remaining until the deadline of a job across
+ * the blocks still to be processed. A block receives the remaining time, minus a
+ * reserve for the rows expected after it. The reserve is proportional to the
+ * number of rows, but never larger than the time which the rows are expected to
+ * need, based on the time needed for earlier blocks. Thus, time left over by
+ * blocks which converged early is passed on to the following blocks.
+ * If the number of rows of the job is unknown, at least three blocks of the same
+ * size, and as many rows as processed so far, are expected to follow. As this is
+ * only a guess, the reserve is not bounded by the time needed for earlier blocks,
+ * so that each block receives at most a quarter of the remaining time.
+ * Instances may be shared between threads.
+ * @author Florian Wiedner
+ */
+public class TimeBudget {
+    /** The minimal time limit in milliseconds */
+    private static final int MIN_LIMIT = 100;
+
+    /** The minimal number of blocks expected to follow, if the number of rows of the job is unknown */
+    private static final int MIN_UNKNOWN_BLOCKS = 3;
+
+    /** The weight of the most recent block */
+    private static final double WEIGHT = 0.3d;
+
+    /** The deadline, as returned by {@link System#nanoTime()} */
+    private final long deadline;
+
+    /** The expected number of rows of the job, zero if unknown */
+    private final long expectedRows;
+
+    /** The number of blocks processed at the same time */
+    private final int parallelism;
+
+    /** The number of rows processed so far */
+    private long processedRows = 0;
+
+    /** The estimated processing time per row in nanoseconds, negative if unknown */
+    private double nanosPerRow = -1d;
+
+    /**
+     * Constructor. The time starts running when this object is created.
+     *
+     * @param runtime ParametersRuntime
+     */
+    public TimeBudget(ParametersRuntime runtime) {
+        this.deadline = System.nanoTime() + runtime.getJobDeadlineSeconds() * 1000000000L;
+        this.expectedRows = runtime.getExpectedRows();
+        this.parallelism = runtime.doAsynchronousProcessing() ? Math.max(1, runtime.getThreads()) : 1;
+    }
+
+    /**
+     * Returns the time limit for the search of a block.
+     *
+     * @param rows The number of rows of the block
+     * @return int the time limit in milliseconds
+     */
+    public synchronized int getTimeLimit(int rows) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+            return MIN_LIMIT;
+        }
+        long others = expectedRows > 0L ? Math.max(0L, expectedRows - processedRows - rows) : Math.max(processedRows, (long) MIN_UNKNOWN_BLOCKS * rows);
+        // Blocks processed at the same time share the wall-clock time
+        double budget = (double) remaining * parallelism;
+        double reserve = others == 0L ? 0d : budget * others / (others + rows);
+        if (expectedRows > 0L && nanosPerRow >= 0d) {
+            reserve = Math.min(reserve, nanosPerRow * others);
+        }
+        double limit = Math.min(budget - reserve, remaining) / 1000000d;
+        return (int) Math.max(MIN_LIMIT, Math.min(Integer.MAX_VALUE, limit));
+    }
+
+    /**
+     * Records the time needed for processing a block.
+     *
+     * @param rows The number of rows of the block
+     * @param nanos The processing time in nanoseconds
+     */
+    public synchronized void record(int rows, long nanos) {
+        if (rows == 0) {
+            return;
+        }
+        processedRows += rows;
+        double perRow = (double) nanos / rows;
+        nanosPerRow = nanosPerRow < 0d ? perRow : WEIGHT * perRow + (1d - WEIGHT) * nanosPerRow;
+    }
+}
@@ -3,12 +3,21 @@ import org.deidentifier.arx.*;
 import org.deidentifier.arx.criteria.AverageReidentificationRisk;
 import org.deidentifier.arx.exceptions.RollbackRequiredException;
 import org.deidentifier.arx.metric.Metric;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.values.PCollection;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.talend.sdk.component.junit.JoinInputFactory;
 import org.talend.sdk.component.junit.SimpleComponentRule;
+import org.talend.sdk.component.api.processor.OutputEmitter;
+import org.talend.sdk.component.api.record.Record;
 import org.talend.sdk.component.runtime.output.Processor;
+import org.talend.sdk.component.runtime.record.RecordBuilderFactoryImpl;
 
 import javax.json.Json;
 import javax.json.JsonObject;
@@ -17,8 +26,11 @@ import javax.json.JsonValue;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -60,6 +72,186 @@ public class ARXDeidentifierProcessorTest {
     }
 
 
+    @Test
+    public void anonymizeParallel(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ANONYMIZE);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRuntimeSettings().setThreads(2);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+        assertEquals(1, outputs.size());// test of the output branches count of the component
+
+        final List<JsonObject> defaultOutput = outputs.get(JsonObject.class, "__default__");
+        //Blocks processed in parallel are emitted in the order of the input, as if processed sequentially
+        assertEquals(anonymizeSequentially(TestData.ds1),defaultOutput);
+    }
+
+    @Test
+    public void anonymizePipelined(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ANONYMIZE);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRuntimeSettings().setPipelined(true);
+        configuration.getRuntimeSettings().setMaxBlocksInFlight(2);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+        assertEquals(1, outputs.size());// test of the output branches count of the component
+
+        final List<JsonObject> defaultOutput = outputs.get(JsonObject.class, "__default__");
+        //Blocks processed while the next block is buffered are emitted in the order of the input, as if processed sequentially
+        assertEquals(anonymizeSequentially(TestData.ds1),defaultOutput);
+    }
+
+    @Test
+    public void assessPipelined(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(8);
+        configuration.getRuntimeSettings().setPipelined(true);
+        configuration.getRuntimeSettings().setMaxBlocksInFlight(3);
+        configuration.getRuntimeSettings().setStreamingAssessment(true);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+
+        final List<JsonObject> errorOutput = outputs.get(JsonObject.class, "Error");
+        //Blocks are emitted in the order of the input, although they are assessed in the background
+        assertEquals(TestData.ds1,errorOutput);
+    }
+
+    @Test
+    public void anonymizePartitioned(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ANONYMIZE);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRuntimeSettings().setThreads(2);
+        configuration.getRuntimeSettings().setPartitionField("sex");
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+        assertEquals(1, outputs.size());// test of the output branches count of the component
+
+        final List<JsonObject> defaultOutput = outputs.get(JsonObject.class, "__default__");
+        //Each partition is anonymized separately, as if processed sequentially
+        final Map<String, List<JsonObject>> partitions = new LinkedHashMap<>();
+        for (JsonObject record : TestData.ds1) {
+            partitions.computeIfAbsent(record.getString("sex"), key -> new ArrayList<>()).add(record);
+        }
+        final Map<String, List<JsonObject>> anonymized = new HashMap<>();
+        partitions.forEach((key, records) -> anonymized.put(key, anonymizeSequentially(records)));
+
+        //Blocks are emitted when full, the partial blocks at the end of the group in the order in which they were started
+        final List<JsonObject> expected = new ArrayList<>();
+        final Map<String, Integer> open = new LinkedHashMap<>();
+        final Map<String, Integer> total = new HashMap<>();
+        for (JsonObject record : TestData.ds1) {
+            final String key = record.getString("sex");
+            final int rows = total.merge(key, 1, Integer::sum);
+            if (open.merge(key, 1, Integer::sum) == 10) {
+                open.remove(key);
+                expected.addAll(anonymized.get(key).subList(rows - 10, rows));
+            }
+        }
+        open.forEach((key, rows) -> expected.addAll(anonymized.get(key).subList(total.get(key) - rows, total.get(key))));
+        assertEquals(expected, defaultOutput);
+    }
+
+    @Test
+    public void assessRecords(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setOutputFormat(ParametersRuntime.OutputFormat.RECORD);
+        configuration.getRuntimeSettings().setBlockSize(8);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+        assertEquals(1, outputs.size());// test of the output branches count of the component
+
+        final List<Record> errorOutput = outputs.get(Record.class, "Error");
+        //Records carry the unchanged values of the input
+        assertEquals(TestData.ds1.size(),errorOutput.size());
+        for (int i = 0; i < errorOutput.size(); i++) {
+            assertEquals(TestData.ds1.get(i).getString("sex"), errorOutput.get(i).getString("sex"));
+            assertEquals(TestData.ds1.get(i).getString("age"), errorOutput.get(i).getString("age"));
+        }
+    }
+
+    @Test
+    public void assessRouted(){
+        //Initialization
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(20);
+        configuration.getRuntimeSettings().setRecordRouting(true);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", TestData.ds1);
+
+        final SimpleComponentRule.Outputs outputs = COMPONENT_FACTORY.collect(processor, joinInputFactory);
+
+        //Records in classes with less than 5 records per block are at risk for the default highest risk of 0.2
+        int atRisk = 0;
+        for (int start = 0; start < TestData.ds1.size(); start += 20) {
+            final List<JsonObject> block = TestData.ds1.subList(start, Math.min(start + 20, TestData.ds1.size()));
+            for (JsonObject record : block) {
+                atRisk += block.stream().filter(other -> other.equals(record)).count() < 5 ? 1 : 0;
+            }
+        }
+        final List<JsonObject> defaultOutput = outputs.get(JsonObject.class, "__default__");
+        final List<JsonObject> errorOutput = outputs.get(JsonObject.class, "Error");
+        assertNotEquals(0, atRisk);
+        assertEquals(atRisk, errorOutput.size());
+        assertEquals(TestData.ds1.size() - atRisk, defaultOutput.size());
+    }
+
     @Test
     public void assess(){
         //Initialization
@@ -83,4 +275,215 @@ public class ARXDeidentifierProcessorTest {
         assertEquals(TestData.ds1.size(),defaultOutput.size());
         assertEquals(defaultOutput,TestData.ds1);//Make sure that the Data is not changed in the Process
     }
-}
\ No newline at end of file
+
+    @Test
+    public void assessManyQis(){
+        //Initialization
+        final int[] cardinalities = new int[EquivalenceClasses.MAX_QIS + 1];
+        Arrays.fill(cardinalities, 1);
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), 20, 7L)
+                .withQis(cardinalities).withPayload(1, 8);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRuntimeSettings().setStreamingAssessment(true);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //The risks of blocks with more quasi-identifiers than supported by the streaming assessment are assessed by ARX
+        final long[] emitted = new long[2];
+        final OutputEmitter<Object> main = value -> emitted[0]++;
+        final OutputEmitter<Object> error = value -> emitted[1]++;
+        final ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test"));
+        processor.init();
+        input.forEachRemaining(record -> processor.bufferizer(record, main, error));
+        processor.endBatch(main, error, main);
+        processor.release();
+
+        //All records are equal and thus not at risk
+        assertEquals(20L, emitted[0]);
+        assertEquals(0L, emitted[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void routingManyQis(){
+        //Initialization
+        final int[] cardinalities = new int[EquivalenceClasses.MAX_QIS + 1];
+        Arrays.fill(cardinalities, 1);
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), 20, 7L)
+                .withQis(cardinalities);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setRecordRouting(true);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //Routing is rejected when the processor is initialized, instead of failing for the first record
+        new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test")).init();
+    }
+
+    @Test
+    public void flushOverdue(){
+        //Initialization
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), 20, 7L)
+                .withQis(2, 10).withPayload(1, 8);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(1000);
+        configuration.getRuntimeSettings().setStreamingAssessment(true);
+        configuration.getRuntimeSettings().setFlushAgeMillis(1);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        final long[] emitted = new long[1];
+        final long[] now = new long[1];
+        final OutputEmitter<Object> counter = value -> emitted[0]++;
+        final ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test"));
+        processor.setClock(() -> now[0]);
+        processor.init();
+
+        //A block is only checked when a record arrives, and carried forward while smaller than the minimal class size of 5
+        for (int i = 0; i < 3; i++) {
+            processor.bufferizer(input.next(), counter, counter);
+        }
+        now[0] = 2000000L;
+        processor.bufferizer(input.next(), counter, counter);
+        processor.bufferizer(input.next(), counter, counter);
+        assertEquals(0L, emitted[0]);
+
+        //The next record flushes the overdue block of 5 records and starts a new block
+        processor.bufferizer(input.next(), counter, counter);
+        assertEquals(5L, emitted[0]);
+
+        //The new block is not flushed before its oldest record is 1 ms old
+        now[0] = 2999999L;
+        for (int i = 0; i < 4; i++) {
+            processor.bufferizer(input.next(), counter, counter);
+        }
+        assertEquals(5L, emitted[0]);
+        now[0] = 3000000L;
+        processor.bufferizer(input.next(), counter, counter);
+        assertEquals(10L, emitted[0]);
+
+        //The remaining records are emitted at the end of the group
+        input.forEachRemaining(record -> processor.bufferizer(record, counter, counter));
+        assertEquals(10L, emitted[0]);
+        processor.endBatch(counter, counter, counter);
+        processor.release();
+        assertEquals(20L, emitted[0]);
+    }
+
+    @Test
+    public void summaryOnlyForDistributedAssessment(){
+        //Initialization
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), 100, 7L)
+                .withQis(2, 10).withPayload(1, 8);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRuntimeSettings().setStreamingAssessment(true);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //Without the distributed assessment, nothing is written to the Summary output
+        final long[] emitted = new long[2];
+        final OutputEmitter<Object> counter = value -> emitted[0]++;
+        final OutputEmitter<Object> summary = value -> emitted[1]++;
+        final ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test"));
+        processor.init();
+        input.forEachRemaining(record -> processor.bufferizer(record, counter, counter));
+        processor.endBatch(counter, counter, summary);
+        processor.release();
+        assertEquals(100L, emitted[0]);
+        assertEquals(0L, emitted[1]);
+    }
+
+    @Test
+    public void assessDistributed(){
+        //Initialization
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), 3000, 7L)
+                .withQis(2, 10, 50).withNullRate(0.05d).withPayload(1, 8);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(100);
+        configuration.getRuntimeSettings().setDistributedAssessment(true);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //Each worker summarizes its own slice of the records
+        final List<Record> records = new ArrayList<>();
+        input.forEachRemaining(records::add);
+        final List<RiskSummary> summaries = new ArrayList<>();
+        final long[] passed = new long[1];
+        final OutputEmitter<Object> main = value -> passed[0]++;
+        final OutputEmitter<Object> summary = value -> summaries.add(RiskSummary.of((JsonObject) value));
+        for (int slice = 0; slice < 3; slice++) {
+            final ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test"));
+            processor.init();
+            for (Record record : records.subList(slice * 1000, (slice + 1) * 1000)) {
+                processor.bufferizer(record, main, main);
+            }
+            processor.endBatch(main, main, summary);
+            processor.release();
+        }
+        //All records are passed on
+        assertEquals(records.size(), passed[0]);
+        assertEquals(3, summaries.size());
+
+        //The merged summaries contain all records
+        final ParametersRisk thresholds = configuration.getRiskSettings();
+        final RiskSummary all = new RiskSummary();
+        summaries.forEach(all::merge);
+        assertEquals(records.size(), all.getNumRecords());
+
+        //The risks of all records, assessed by ARX on a single node
+        final DataBuffer union = new DataBuffer(input.getHeader().toArray(new String[0]));
+        final OperationDataTransformer transformer = new OperationDataTransformer();
+        records.forEach(record -> transformer.read(record, union));
+        final ParametersRisk expected = new OperationRiskAssessment(thresholds).calculate(union);
+        final ParametersRisk merged = all.getRisks(thresholds);
+        assertEquals(expected.getAverageRisk(), merged.getAverageRisk(), 1e-9);
+        assertEquals(expected.getRecordsAtRisk(), merged.getRecordsAtRisk(), 1e-9);
+
+        final Pipeline pipeline = Pipeline.create();
+        final PCollection<ParametersRisk> risks = pipeline
+                .apply(Create.of(summaries).withCoder(SerializableCoder.of(RiskSummary.class)))
+                .apply(Combine.globally(new RiskSummaryCombineFn(thresholds)));
+        PAssert.thatSingleton(risks).satisfies(risk -> {
+            assertEquals(expected.getAverageRisk(), risk.getAverageRisk(), 1e-9);
+            assertEquals(expected.getRecordsAtRisk(), risk.getRecordsAtRisk(), 1e-9);
+            assertEquals(expected.getHighestRisk(), risk.getHighestRisk(), 1e-9);
+            return null;
+        });
+        pipeline.run().waitUntilFinish();
+    }
+
+    /**
+     * Returns the records emitted on the main output, if the input is anonymized
+     * sequentially in blocks of 10 rows
+     */
+    private static List<JsonObject> anonymizeSequentially(List<JsonObject> input){
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ANONYMIZE);
+        configuration.getRuntimeSettings().setBlockSize(10);
+        configuration.getRiskSettings().setQis(TestData.qis1);
+        configuration.getRuntimeSettings().setInputStructure(TestData.input);
+
+        final Processor processor = COMPONENT_FACTORY.createProcessor(ARXDeidentifierProcessor.class, configuration);
+        final JoinInputFactory joinInputFactory =  new JoinInputFactory()
+                .withInput("__default__", input);
+        return COMPONENT_FACTORY.collect(processor, joinInputFactory).get(JsonObject.class, "__default__");
+    }
+}
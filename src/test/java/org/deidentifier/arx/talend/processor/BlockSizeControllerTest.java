@@ -0,0 +1,64 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BlockSizeControllerTest {
+
+    @Test
+    public void startsWithinBounds() {
+        assertEquals(1000, new BlockSizeController(runtime(0)).getBlockSize());
+        assertEquals(5000, new BlockSizeController(runtime(5000)).getBlockSize());
+        assertEquals(100000, new BlockSizeController(runtime(1000000)).getBlockSize());
+    }
+
+    @Test
+    public void growsByAtMostTwice() {
+        //Blocks of 1000 rows taking 1 ms are far below the target of 10 s
+        final BlockSizeController controller = new BlockSizeController(runtime(1000));
+        controller.record(1000, 1000000L);
+        assertEquals(2000, controller.getBlockSize());
+        controller.record(2000, 2000000L);
+        assertEquals(4000, controller.getBlockSize());
+        for (int i = 0; i < 10; i++) {
+            controller.record(controller.getBlockSize(), controller.getBlockSize() * 1000L);
+        }
+        assertEquals(100000, controller.getBlockSize());
+    }
+
+    @Test
+    public void shrinksByAtMostHalf() {
+        //Blocks of 80000 rows taking 80 s are far above the target of 10 s
+        final BlockSizeController controller = new BlockSizeController(runtime(80000));
+        controller.record(80000, 80000000000L);
+        assertEquals(40000, controller.getBlockSize());
+        for (int i = 0; i < 10; i++) {
+            controller.record(controller.getBlockSize(), controller.getBlockSize() * 1000000L);
+        }
+        assertEquals(10000, controller.getBlockSize());
+    }
+
+    @Test
+    public void convergesToTarget() {
+        //At 0.2 ms per row, blocks of 50000 rows take the target time
+        final BlockSizeController controller = new BlockSizeController(runtime(1000));
+        for (int i = 0; i < 20; i++) {
+            controller.record(controller.getBlockSize(), controller.getBlockSize() * 200000L);
+        }
+        assertEquals(50000, controller.getBlockSize());
+
+        //Empty blocks do not change the estimate
+        controller.record(0, 1000000000L);
+        assertEquals(50000, controller.getBlockSize());
+    }
+
+    /**
+     * Returns the default settings for adaptive blocks with the given initial block size
+     */
+    private static ParametersRuntime runtime(int blockSize) {
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setAdaptiveBlockSize(true);
+        runtime.setBlockSize(blockSize);
+        return runtime;
+    }
+}
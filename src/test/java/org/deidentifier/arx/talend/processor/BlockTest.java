@@ -0,0 +1,38 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class BlockTest {
+
+    @Test
+    public void concatAssessesMergedRows() {
+        //Each block holds a single record of the same class
+        final int[] qis = {0, 1};
+        final Block first = block(qis, true);
+        final Block second = block(qis, false);
+
+        //The merged block is assessed, although only the first block was
+        final Block merged = first.concat(second, qis);
+        assertEquals(2, merged.getNumRows());
+        assertNotNull(merged.getAssessor());
+        assertEquals(2L, merged.getAssessor().getNumRecords());
+        assertEquals(0d, merged.getAssessor().getRisks(0.5d).getRecordsAtRisk(), 0d);
+        assertEquals(0, merged.getAssessor().getRowsAtRisk(merged.getBuffer(), qis, 0.5d).cardinality());
+
+        //Blocks that were not assessed are merged without assessment
+        assertNull(block(qis, false).concat(block(qis, false), qis).getAssessor());
+    }
+
+    /**
+     * Returns a block with a single record, assessed while buffering if requested
+     */
+    private static Block block(int[] qis, boolean assessed) {
+        final Block block = new Block(new DataBuffer(new String[] {"sex", "zip"}), assessed ? new StreamingRiskAssessor(qis.length) : null);
+        block.getBuffer().add(new String[] {"M", "4711"});
+        block.assess(qis);
+        return block;
+    }
+}
@@ -0,0 +1,115 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClassCountTableTest {
+
+    @Test
+    public void countsCollidingTuples() {
+        //Fill the initial slots up to the maximal load, so that probe sequences overlap
+        final ClassCountTable table = new ClassCountTable(2);
+        final long capacity = table.getCapacity();
+        final int tuples = (int) (capacity * 0.7d) - 1;
+        for (int i = 0; i < tuples; i++) {
+            table.add(new int[] {i, -i}, i + 1);
+        }
+        assertEquals(capacity, table.getCapacity());
+
+        //Each tuple keeps its own count, tuples that were not added have none
+        for (int i = 0; i < tuples; i++) {
+            assertEquals(i + 1, table.get(new int[] {i, -i}));
+        }
+        assertEquals(0L, table.get(new int[] {tuples, -tuples}));
+        assertEquals(0L, table.get(new int[] {1, 1}));
+        assertEquals(tuples, table.size());
+        assertEquals((long) tuples * (tuples + 1) / 2, table.getTotal());
+    }
+
+    @Test
+    public void growsAcrossSegments() {
+        //Segments of 64 slots of 16 bytes
+        final ClassCountTable table = new ClassCountTable(2, 0L, 1024);
+        final Map<Long, Long> expected = new HashMap<>();
+        final Random random = new Random(42L);
+        for (int i = 0; i < 100000; i++) {
+            final int[] codes = {random.nextInt(300), random.nextInt(300)};
+            table.add(codes, 1L);
+            expected.merge(key(codes), 1L, Long::sum);
+        }
+        assertTrue(table.getCapacity() > 1024);
+
+        //All counts survive the re-insertion into more segments
+        assertEquals(expected.size(), table.size());
+        assertEquals(100000L, table.getTotal());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            final int[] codes = {(int) (entry.getKey() >>> 32), (int) (long) entry.getKey()};
+            assertEquals((long) entry.getValue(), table.get(codes));
+        }
+
+        //Iterating the slots of all segments visits each tuple once
+        final int[] codes = new int[2];
+        long occupied = 0L;
+        for (long slot = 0; slot < table.getCapacity(); slot++) {
+            final long count = table.getCount(slot);
+            if (count != 0L) {
+                table.getCodes(slot, codes);
+                assertEquals((long) expected.get(key(codes)), count);
+                occupied++;
+            }
+        }
+        assertEquals(table.size(), occupied);
+    }
+
+    @Test
+    public void reportsFootprint() {
+        //A count of 8 bytes and 3 codes of 4 bytes per slot
+        final ClassCountTable table = new ClassCountTable(3);
+        assertEquals(table.getCapacity() * 20L, table.getFootprint());
+        for (int i = 0; i < 10000; i++) {
+            table.add(new int[] {i, i, i}, 1L);
+        }
+        assertEquals(table.getCapacity() * 20L, table.getFootprint());
+        assertTrue(table.getFootprint() >= 10000L * 20L);
+
+        //The expected number of tuples is allocated up front
+        assertEquals(table.getFootprint(), new ClassCountTable(3, 10000L).getFootprint());
+    }
+
+    @Test
+    public void zeroCountIsEmptySlot() {
+        //A tuple of zero codes looks like an empty slot but for its count
+        final ClassCountTable table = new ClassCountTable(2);
+        final int[] zeros = {0, 0};
+        assertEquals(0L, table.get(zeros));
+        table.add(zeros, 3L);
+        table.add(zeros, 2L);
+        assertEquals(5L, table.get(zeros));
+        assertEquals(1L, table.size());
+
+        //All other slots are empty
+        long empty = 0L;
+        for (long slot = 0; slot < table.getCapacity(); slot++) {
+            empty += table.getCount(slot) == 0L ? 1L : 0L;
+        }
+        assertEquals(table.getCapacity() - 1L, empty);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCount() {
+        //A count of zero would occupy a slot that still looks empty
+        new ClassCountTable(2).add(new int[] {1, 2}, 0L);
+    }
+
+    /**
+     * Returns a key for a tuple of two codes
+     */
+    private static long key(int[] codes) {
+        return ((long) codes[0] << 32) | (codes[1] & 0xFFFFFFFFL);
+    }
+}
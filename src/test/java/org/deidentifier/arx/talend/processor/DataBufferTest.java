@@ -0,0 +1,192 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.talend.sdk.component.api.record.Schema;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataBufferTest {
+
+    //Enough rows for several chunks of each column
+    private static final int ROWS = 100000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dictionaryEncoding() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"qi", "id"});
+        for (int row = 0; row < ROWS; row++) {
+            buffer.add(new String[] {"v" + row % 10, row % 100 == 0 ? null : "identifier-" + row});
+        }
+
+        //Rows are read back across chunks
+        assertEquals(ROWS, buffer.getNumRows());
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals("v" + row % 10, buffer.get(row, 0));
+            assertEquals(row % 100 == 0, buffer.isNull(row, 1));
+        }
+
+        //Equal values share a code and a single dictionary entry
+        assertEquals(10, buffer.getDistinctValues(0).length);
+        assertEquals(buffer.getCode(3, 0), buffer.getCode(ROWS - 7, 0));
+        assertSame(buffer.get(3, 0), buffer.get(ROWS - 7, 0));
+        assertEquals("v3", buffer.getDistinctValues(0)[buffer.getCode(3, 0)]);
+
+        //Null values share a code, too
+        assertEquals(buffer.getCode(0, 1), buffer.getCode(ROWS - 100, 1));
+    }
+
+    @Test
+    public void iteratorStartsWithHeader() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"qi", "id", "age"});
+        buffer.add(new String[] {"a", "1", "30"});
+        buffer.add(new String[] {"b", "2", "40"});
+
+        //The header is followed by all rows, projected onto the given columns
+        final Iterator<String[]> iterator = buffer.iterator(new int[] {2, 0});
+        assertArrayEquals(new String[] {"age", "qi"}, iterator.next());
+        assertArrayEquals(new String[] {"30", "a"}, iterator.next());
+        assertArrayEquals(new String[] {"40", "b"}, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void subsetAndConcat() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"qi"});
+        for (int row = 0; row < 10; row++) {
+            buffer.add(new String[] {Integer.toString(row)});
+        }
+        final DataBuffer first = buffer.subset(0, 4);
+        final DataBuffer second = buffer.subset(4, 10);
+        assertEquals(4, first.getNumRows());
+        assertEquals("4", second.get(0, 0));
+
+        //Concatenating both parts restores the buffer
+        final DataBuffer result = first.concat(second);
+        assertEquals(10, result.getNumRows());
+        for (int row = 0; row < 10; row++) {
+            assertArrayEquals(buffer.getRow(row), result.getRow(row));
+        }
+    }
+
+    @Test
+    public void replaceColumnsSharesOthers() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"qi", "id", "age"});
+        final DataBuffer replacement = new DataBuffer(new String[] {"age", "qi"});
+        for (int row = 0; row < 100; row++) {
+            buffer.add(new String[] {"v" + row % 10, "identifier-" + row, Integer.toString(row)});
+            replacement.add(new String[] {"*", "v" + row % 2});
+        }
+
+        //Only the given columns are replaced, in the given order
+        final DataBuffer result = buffer.replaceColumns(new int[] {2, 0}, replacement);
+        assertArrayEquals(buffer.getHeader(), result.getHeader());
+        for (int row = 0; row < 100; row++) {
+            assertArrayEquals(new String[] {"v" + row % 2, "identifier-" + row, "*"}, result.getRow(row));
+        }
+
+        //All other columns are shared, not copied
+        assertTrue(result.isShared(buffer, 1));
+        assertFalse(result.isShared(buffer, 0));
+        assertFalse(result.isShared(buffer, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replaceColumnsRequiresSameRows() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"qi", "id"});
+        buffer.add(new String[] {"a", "1"});
+        buffer.replaceColumns(new int[] {0}, new DataBuffer(new String[] {"qi"}));
+    }
+
+    @Test
+    public void spillRoundTrip() throws IOException {
+        final String[] header = {"qi", "id", "age"};
+        final Schema.Type[] types = {Schema.Type.STRING, Schema.Type.STRING, Schema.Type.INT};
+        final DataBuffer buffer = new DataBuffer(header, types, folder.newFolder(), 0L);
+        final DataBuffer reference = new DataBuffer(header, types, null, 0L);
+        for (int row = 0; row < ROWS; row++) {
+            final String[] values = row(row);
+            buffer.add(values);
+            reference.add(values);
+        }
+
+        //All values are read back unchanged
+        assertEquals(ROWS, buffer.getNumRows());
+        for (int row = 0; row < ROWS; row++) {
+            assertArrayEquals(reference.getRow(row), buffer.getRow(row));
+            assertEquals(reference.isNull(row, 1), buffer.isNull(row, 1));
+        }
+
+        //Equal values share a code, also for the spilled dictionary of the identifiers
+        assertEquals(reference.getNumDistinctValues(1), buffer.getNumDistinctValues(1));
+        assertEquals(buffer.getCode(7, 1), buffer.getCode(7 + ROWS / 2, 1));
+        assertArrayEquals(reference.getDistinctValues(0), buffer.getDistinctValues(0));
+
+        //Neither the chunks nor the identifiers stay on heap, only the last chunk and small dictionaries
+        assertTrue(buffer.getHeapSize() < reference.getHeapSize() / 10);
+    }
+
+    @Test
+    public void releaseUnmapsSegments() throws IOException {
+        final String[] header = {"qi", "id", "age"};
+        final Schema.Type[] types = {Schema.Type.STRING, Schema.Type.STRING, Schema.Type.INT};
+        final DataBuffer buffer = new DataBuffer(header, types, folder.newFolder(), 0L);
+        for (int row = 0; row < ROWS; row++) {
+            buffer.add(row(row));
+        }
+
+        //The segments grow with the spilled chunks and identifiers, instead of being reserved in advance
+        final long mapped = buffer.getMappedBytes();
+        assertTrue(mapped > 0L);
+        assertTrue(mapped < 16L << 20);
+
+        //A buffer sharing columns releases the segments of both buffers
+        final DataBuffer replacement = buffer.newBuffer(new String[] {"qi"});
+        for (int row = 0; row < ROWS; row++) {
+            replacement.add(new String[] {"*"});
+        }
+        final DataBuffer replaced = buffer.replaceColumns(new int[] {0}, replacement);
+        assertEquals(mapped + replacement.getMappedBytes(), replaced.getMappedBytes());
+        replaced.release();
+        assertEquals(0L, buffer.getMappedBytes());
+        assertEquals(0L, replacement.getMappedBytes());
+        assertEquals(0L, replaced.getMappedBytes());
+
+        //Releasing again does nothing
+        buffer.release();
+        assertEquals(0L, buffer.getMappedBytes());
+    }
+
+    @Test
+    public void heapSizeCountsDictionaries() {
+        final DataBuffer buffer = new DataBuffer(new String[] {"id"});
+        buffer.add(new String[] {"a"});
+        final long chunks = buffer.getHeapSize();
+        for (int row = 0; row < 1000; row++) {
+            buffer.add(new String[] {"identifier-" + row});
+        }
+        assertTrue(buffer.getHeapSize() > chunks + 1000 * 2 * "identifier-".length());
+    }
+
+    /**
+     * Returns a row with a low-cardinality quasi-identifier, an identifier that
+     * repeats once and is sometimes null, and a number
+     */
+    private static String[] row(int row) {
+        final int id = row % (ROWS / 2);
+        return new String[] {
+                "v" + row % 10,
+                id % 100 == 0 ? null : "identifier-\u00e4-" + id,
+                Integer.toString(row % 90)
+        };
+    }
+}
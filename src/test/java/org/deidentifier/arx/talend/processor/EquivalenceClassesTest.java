@@ -0,0 +1,94 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EquivalenceClassesTest {
+
+    @Test
+    public void matchesWildcard() {
+        //Wildcards in all columns, so that classes match in many different ways
+        final Random random = new Random(42L);
+        final EquivalenceClasses classes = new EquivalenceClasses(5);
+        final List<int[]> records = new ArrayList<>();
+        for (int row = 0; row < 2000; row++) {
+            final int[] codes = new int[5];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = random.nextDouble() < 0.2d ? EquivalenceClasses.WILDCARD : random.nextInt(3);
+            }
+            classes.add(codes);
+            records.add(codes);
+        }
+
+        //Each record matches the same number of records as counted pairwise
+        final ClassCountTable matches = classes.getMatchesWildcard();
+        for (int[] record : records) {
+            long expected = 0L;
+            for (int[] other : records) {
+                expected += matches(record, other) ? 1L : 0L;
+            }
+            assertEquals(expected, matches.get(record));
+        }
+    }
+
+    @Test
+    public void risksWildcardMatchArx() {
+        //Records with null values in both quasi-identifiers
+        final String[] header = {"sex", "zip", "payload"};
+        final ParametersRisk thresholds = OperationCellSuppressionTest.risk("sex", "zip");
+        final int[] qis = thresholds.getQiIndices(header);
+        final Random random = new Random(42L);
+        final DataBuffer data = new DataBuffer(header);
+        final StreamingRiskAssessor assessor = new StreamingRiskAssessor(qis.length);
+        for (int row = 0; row < 500; row++) {
+            data.add(new String[] {
+                    random.nextDouble() < 0.1d ? OperationDataTransformer.MAGIC_NULL_VALUE : random.nextBoolean() ? "M" : "F",
+                    random.nextDouble() < 0.1d ? OperationDataTransformer.MAGIC_NULL_VALUE : Integer.toString(4700 + random.nextInt(40)),
+                    Integer.toString(row)
+            });
+            assessor.add(data, row, qis);
+        }
+
+        //The risks counted while buffering equal the risks of the wildcard model of ARX
+        final OperationRiskAssessment assessment = new OperationRiskAssessment(thresholds);
+        final ParametersRisk expected = assessment.calculate(data);
+        final ParametersRisk actual = assessment.calculate(assessor);
+        assertEquals(expected.getAverageRisk(), actual.getAverageRisk(), 1e-9d);
+        assertEquals(expected.getRecordsAtRisk(), actual.getRecordsAtRisk(), 1e-9d);
+    }
+
+    @Test
+    public void rowsAtRiskFollowAddedRecords() {
+        //A single record is at risk after the assessment
+        final String[] header = {"sex", "zip"};
+        final int[] qis = {0, 1};
+        final DataBuffer data = new DataBuffer(header);
+        final StreamingRiskAssessor assessor = new StreamingRiskAssessor(qis.length);
+        data.add(new String[] {"M", "4711"});
+        assessor.add(data, 0, qis);
+        assertEquals(1d, assessor.getRisks(0.5d).getRecordsAtRisk(), 0d);
+        assertEquals(1, assessor.getRowsAtRisk(data, qis, 0.5d).cardinality());
+
+        //A second record of the same class is not reflected by the matches of the earlier assessment
+        data.add(new String[] {"M", "4711"});
+        assessor.add(data, 1, qis);
+        assertEquals(0, assessor.getRowsAtRisk(data, qis, 0.5d).cardinality());
+        assertEquals(0d, assessor.getRisks(0.5d).getRecordsAtRisk(), 0d);
+    }
+
+    /**
+     * Returns whether two records match, treating wildcards as matching any code
+     */
+    private static boolean matches(int[] record, int[] other) {
+        for (int i = 0; i < record.length; i++) {
+            if (record[i] != other[i] && record[i] != EquivalenceClasses.WILDCARD && other[i] != EquivalenceClasses.WILDCARD) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
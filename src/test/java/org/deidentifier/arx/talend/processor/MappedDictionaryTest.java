@@ -0,0 +1,58 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedDictionaryTest {
+
+    @Test
+    public void growReleasesSlots() {
+        final Set<ByteBuffer> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<ByteBuffer> released = new ArrayList<>();
+        final MappedDictionary dictionary = new MappedDictionary(size -> {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            live.add(buffer);
+            return buffer;
+        }, buffer -> {
+            assertTrue(live.remove(buffer));
+            released.add(buffer);
+        });
+
+        //The first values only occupy small segments
+        assertEquals(0, dictionary.getCode(null));
+        assertEquals(1, dictionary.getCode("value-0"));
+        assertTrue(getBytes(live) < 2L << 20);
+
+        //Values keep their codes while the slots grow, and the previous slots are released
+        for (int i = 0; i < 200000; i++) {
+            assertEquals(i + 1, dictionary.getCode("value-" + i));
+        }
+        assertEquals(200001, dictionary.size());
+        assertNull(dictionary.get(0));
+        assertEquals("value-12345", dictionary.get(12346));
+        assertEquals(3, released.size());
+        for (ByteBuffer buffer : live) {
+            assertTrue(buffer.capacity() <= 1 << 26);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the given buffers
+     */
+    private static long getBytes(Set<ByteBuffer> buffers) {
+        long bytes = 0L;
+        for (ByteBuffer buffer : buffers) {
+            bytes += buffer.capacity();
+        }
+        return bytes;
+    }
+}
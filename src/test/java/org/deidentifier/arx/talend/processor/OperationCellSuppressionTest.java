@@ -0,0 +1,193 @@
+package org.deidentifier.arx.talend.processor;
+import org.deidentifier.arx.ARXConfiguration;
+import org.deidentifier.arx.ARXResult;
+import org.deidentifier.arx.Data;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OperationCellSuppressionTest {
+
+    @Test
+    public void preCheckSkipsSafeBlock() throws Exception {
+        //Two classes of 50 records satisfy the default thresholds
+        final DataBuffer data = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", "4711"});
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setPreCheck(true);
+        final OperationCellSuppression operation = new OperationCellSuppression(risk("sex", "zip"), runtime);
+
+        assertSame(data, operation.perform(data));
+        assertEquals(0, operation.getStatistics().getLatencies(ParametersStatistics.Phase.ANONYMIZE).getCount());
+
+        //The pre-check is off by default, so that every block is passed to ARX
+        assertFalse(new ParametersRuntime().isPreCheck());
+    }
+
+    @Test
+    public void preCheckPassesUnsafeBlock() throws Exception {
+        //Unique zip codes do not satisfy the default thresholds
+        final DataBuffer data = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row)});
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setPreCheck(true);
+        final OperationCellSuppression operation = new OperationCellSuppression(risk("sex", "zip"), runtime);
+
+        assertEquals(100, operation.perform(data).getNumRows());
+        assertNotEquals(0, operation.getStatistics().getLatencies(ParametersStatistics.Phase.ANONYMIZE).getCount());
+    }
+
+    @Test
+    public void anonymizeKeepsOtherColumns() throws Exception {
+        //Unique zip codes and an identifier, which is not passed to ARX
+        final DataBuffer data = new DataBuffer(new String[] {"sex", "zip", "id"});
+        for (int row = 0; row < 100; row++) {
+            data.add(new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row), "identifier-" + row});
+        }
+        final OperationCellSuppression operation = new OperationCellSuppression(risk("sex", "zip"), new ParametersRuntime());
+
+        //The identifier is shared with the input, and thus unchanged
+        final DataBuffer result = operation.perform(data);
+        assertEquals(100, result.getNumRows());
+        assertTrue(result.isShared(data, 2));
+        assertFalse(result.isShared(data, 1));
+    }
+
+    @Test
+    public void warmStartReusesTransformation() throws Exception {
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setWarmStart(true);
+        final AtomicReference<Map<String, Integer>> transformations = new AtomicReference<>();
+        final HierarchyCache hierarchies = new HierarchyCache();
+
+        //The first block is searched completely, its transformation is kept for all quasi-identifiers
+        final DataBuffer first = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row)});
+        new OperationCellSuppression(risk("sex", "zip"), runtime, hierarchies, transformations, null).perform(first);
+        final Map<String, Integer> levels = transformations.get();
+        assertNotNull(levels);
+        assertEquals(new HashSet<>(Arrays.asList("sex", "zip")), levels.keySet());
+
+        //The next block satisfies the thresholds with the same transformation, which is kept
+        final DataBuffer second = buffer(100, row -> new String[] {row % 2 == 0 ? "F" : "M", Integer.toString(4100 + row)});
+        assertEquals(100, new OperationCellSuppression(risk("sex", "zip"), runtime, hierarchies, transformations, null).perform(second).getNumRows());
+        assertSame(levels, transformations.get());
+    }
+
+    @Test
+    public void coldStartKeepsNoTransformation() throws Exception {
+        final AtomicReference<Map<String, Integer>> transformations = new AtomicReference<>();
+        final DataBuffer data = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row)});
+        new OperationCellSuppression(risk("sex", "zip"), new ParametersRuntime(), new HierarchyCache(), transformations, null).perform(data);
+        assertNull(transformations.get());
+    }
+
+    @Test
+    public void splitWithoutSolution() {
+        //Only blocks of up to 25 rows can be anonymized
+        final OperationCellSuppression operation = new OperationCellSuppression(risk("sex", "zip"), new ParametersRuntime()) {
+            @Override
+            DataBuffer tryPerform(DataBuffer data) {
+                return data.getNumRows() <= 25 ? data : null;
+            }
+        };
+        final DataBuffer data = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row)});
+
+        //The block is split until its parts can be anonymized, instead of being suppressed completely
+        final DataBuffer result = operation.perform(data, System.nanoTime() + 60000000000L);
+        assertEquals(100, result.getNumRows());
+        for (int row = 0; row < 100; row++) {
+            assertArrayEquals(data.getRow(row), result.getRow(row));
+        }
+
+        //After the deadline, the block is suppressed completely
+        final DataBuffer suppressed = operation.perform(data, System.nanoTime());
+        assertEquals(100, suppressed.getNumRows());
+        assertTrue(suppressed.isNull(0, 0));
+    }
+
+    @Test
+    public void sampleThresholdsAreBounded() {
+        //The default highest risk of 0.2 implies classes of 5 records
+        final ParametersRisk thresholds = risk("sex", "zip");
+        final OperationCellSuppression operation = new OperationCellSuppression(thresholds, new ParametersRuntime());
+        assertEquals(5, operation.getSampleClassSize(1d));
+        assertEquals(thresholds.getHighestRisk(), operation.getSampleThreshold(thresholds.getHighestRisk(), 1d, 5), 0d);
+
+        //Small samples still require classes of two records, instead of accepting any risk
+        assertEquals(2, operation.getSampleClassSize(0.1d));
+        assertEquals(0.5d, operation.getSampleThreshold(thresholds.getHighestRisk(), 0.1d, 2), 0d);
+        assertEquals(0.5d, operation.getSampleThreshold(thresholds.getAverageRisk(), 0.1d, 2), 0d);
+
+        //Larger samples scale the thresholds up to the risk of their minimal class size
+        assertEquals(3, operation.getSampleClassSize(0.5d));
+        assertEquals(1d / 3d, operation.getSampleThreshold(thresholds.getHighestRisk(), 0.5d, 3), 0d);
+        assertEquals(0.1d, operation.getSampleThreshold(thresholds.getAverageRisk(), 0.5d, 3), 1e-12d);
+    }
+
+    @Test
+    public void smallBlocksAreNotSampled() {
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setSampleFraction(0.1d);
+        runtime.setMinSampleRows(1000);
+        assertFalse(runtime.doSampling(999));
+        assertTrue(runtime.doSampling(1000));
+
+        //Sampling is disabled by default
+        assertFalse(new ParametersRuntime().doSampling(1000000));
+    }
+
+    @Test
+    public void sampleSearchFallsBack() {
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setSampleFraction(0.5d);
+        final OperationCellSuppression operation = new OperationCellSuppression(risk("sex", "zip"), runtime) {
+            @Override
+            ARXResult anonymize(Data arxData, ARXConfiguration config) {
+                throw new IllegalArgumentException("Invalid configuration");
+            }
+        };
+        final DataBuffer data = buffer(100, row -> new String[] {row % 2 == 0 ? "M" : "F", Integer.toString(4000 + row % 10)});
+
+        //A failed search on the sample leaves the search to the whole block
+        assertNull(operation.searchSample(data, new int[] {0, 1}, runtime.getRecordsPerIteration()));
+    }
+
+    /**
+     * Returns a buffer with the columns sex and zip
+     */
+    static DataBuffer buffer(int rows, IntFunction<String[]> generator) {
+        final DataBuffer data = new DataBuffer(new String[] {"sex", "zip"});
+        for (int row = 0; row < rows; row++) {
+            data.add(generator.apply(row));
+        }
+        return data;
+    }
+
+    /**
+     * Returns the default thresholds for the given quasi-identifiers
+     */
+    static ParametersRisk risk(String... fields) {
+        final List<ParametersRisk.QIValue> qis = new ArrayList<>();
+        for (String field : fields) {
+            final ParametersRisk.QIValue qi = new ParametersRisk.QIValue();
+            qi.setField(field);
+            qis.add(qi);
+        }
+        final ParametersRisk risk = new ParametersRisk();
+        risk.setQis(qis);
+        return risk;
+    }
+}
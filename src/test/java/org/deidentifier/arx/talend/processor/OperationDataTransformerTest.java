@@ -0,0 +1,44 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+import org.talend.sdk.component.api.record.Record;
+import org.talend.sdk.component.api.record.Schema;
+import org.talend.sdk.component.runtime.record.RecordBuilderFactoryImpl;
+
+import javax.json.JsonObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class OperationDataTransformerTest {
+
+    @Test
+    public void floatRoundTrip() {
+        final RecordBuilderFactoryImpl factory = new RecordBuilderFactoryImpl("test");
+        final Record input = factory.newRecordBuilder()
+                .withString("name", "a")
+                .withFloat("weight", 1.1f)
+                .withDouble("height", 1.1d)
+                .build();
+        final String[] header = new String[] {"name", "weight", "height"};
+        final OperationDataTransformer transformer = new OperationDataTransformer();
+        final Schema.Type[] types = transformer.getTypes(input.getSchema(), header);
+        final DataBuffer buffer = new DataBuffer(header, types, null, Long.MAX_VALUE);
+        transformer.read(input, buffer);
+
+        //Floats are written with their own digits, not as widened doubles
+        final List<JsonObject> json = new ArrayList<>();
+        transformer.write(buffer, json::add);
+        assertEquals(new BigDecimal("1.1"), json.get(0).getJsonNumber("weight").bigDecimalValue());
+        assertEquals(1.1d, json.get(0).getJsonNumber("height").doubleValue(), 0d);
+
+        //Records keep the type of each column
+        final List<Record> records = new ArrayList<>();
+        transformer.writeRecords(buffer, records::add, factory);
+        assertEquals("a", records.get(0).getString("name"));
+        assertEquals(1.1f, records.get(0).getFloat("weight"), 0f);
+        assertEquals(1.1d, records.get(0).getDouble("height"), 0d);
+    }
+}
@@ -0,0 +1,38 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingEventTest {
+
+    @Test
+    public void eventsOfAllTypes() {
+        //Events of the flight recorder are used if it is available, which it is as of Java 1.8.0_262
+        for (ProcessingEvent.Type type : ProcessingEvent.Type.values()) {
+            final ProcessingEvent event = ProcessingEvent.create(type);
+            assertTrue(event instanceof FlightRecorderEvents.BlockEvent);
+            event.begin();
+            event.end();
+            event.set(10, 2, ProcessingEvent.NONE);
+            event.addSuppressedCells(4L);
+            event.commit();
+        }
+
+        //Buffering single records is not recorded by default
+        assertFalse(ProcessingEvent.create(ProcessingEvent.Type.BUFFERIZE).isEnabled());
+    }
+
+    @Test
+    public void disabledEventDoesNothing() {
+        //The event used without the flight recorder ignores all calls
+        final ProcessingEvent event = ProcessingEvents.DISABLED;
+        event.begin();
+        event.end();
+        event.set(10, 2, ProcessingEvent.NONE);
+        event.addSuppressedCells(4L);
+        event.commit();
+        assertFalse(event.isEnabled());
+        assertFalse(event.shouldCommit());
+    }
+}
@@ -0,0 +1,64 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+import org.talend.sdk.component.runtime.record.RecordBuilderFactoryImpl;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProcessorMonitorTest {
+
+    @Test
+    public void registersOnlyIfEnabled() throws MalformedObjectNameException {
+        final int registered = count();
+
+        //By default, no bean is registered
+        final ARXDeidentifierProcessor disabled = new ARXDeidentifierProcessor(configuration(false), new RecordBuilderFactoryImpl("test"));
+        disabled.init();
+        assertEquals(registered, count());
+        disabled.release();
+
+        //If enabled, each processor registers a bean until it is released
+        final ARXDeidentifierProcessor enabled = new ARXDeidentifierProcessor(configuration(true), new RecordBuilderFactoryImpl("test"));
+        enabled.init();
+        assertEquals(registered + 1, count());
+        enabled.release();
+        assertEquals(registered, count());
+    }
+
+    @Test
+    public void exposesStatistics() {
+        final ParametersStatistics statistics = new ParametersStatistics();
+        statistics.trackLatency(ParametersStatistics.Phase.READ, 1000000L);
+        statistics.trackLatency(ParametersStatistics.Phase.READ, 3000000L);
+        statistics.trackClassFootprint(4096L);
+        final ProcessorMonitor monitor = new ProcessorMonitor(statistics);
+
+        //The maximum is exact, other percentiles are upper bounds
+        assertEquals(3d, monitor.getLatencyMillis("READ", 100d), 0d);
+        assertEquals(0d, monitor.getLatencyMillis("ANONYMIZE", 50d), 0d);
+        assertEquals(4096L, monitor.getPeakClassFootprint());
+        assertEquals(2L, monitor.getRowsRead());
+    }
+
+    /**
+     * Returns the number of beans registered for processors
+     */
+    private static int count() throws MalformedObjectNameException {
+        return ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("org.deidentifier.arx.talend:type=ARXDeidentifier,*"), null).size();
+    }
+
+    /**
+     * Returns the default configuration, with or without monitoring
+     */
+    private static ARXDeidentifierProcessorConfiguration configuration(boolean monitoring) {
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setJmxMonitoring(monitoring);
+        return configuration;
+    }
+}
@@ -0,0 +1,127 @@
+package org.deidentifier.arx.talend.processor;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class RiskSummaryTest {
+
+    @Test
+    public void mergeEqualsUnion() {
+        //Three slices of records with nulls, summarized from different buffers
+        final String[] header = {"sex", "zip", "payload"};
+        final ParametersRisk thresholds = OperationCellSuppressionTest.risk("sex", "zip");
+        final int[] qis = thresholds.getQiIndices(header);
+        final Random random = new Random(42L);
+        final DataBuffer union = new DataBuffer(header);
+        final RiskSummary merged = new RiskSummary();
+        for (int slice = 0; slice < 3; slice++) {
+            final DataBuffer data = new DataBuffer(header);
+            final RiskSummary summary = new RiskSummary(Arrays.asList("sex", "zip"));
+            for (int row = 0; row < 500; row++) {
+                final String[] values = {
+                        random.nextDouble() < 0.1d ? OperationDataTransformer.MAGIC_NULL_VALUE : random.nextBoolean() ? "M" : "F",
+                        random.nextDouble() < 0.1d ? null : Integer.toString(4700 + random.nextInt(40)),
+                        Integer.toString(row)
+                };
+                data.add(values);
+                union.add(values);
+                summary.add(data, row, qis);
+            }
+            merged.merge(RiskSummary.of(summary.toJson()));
+        }
+
+        //The merged summary counts the classes of all records, as if summarized at once
+        final StreamingRiskAssessor assessor = new StreamingRiskAssessor(qis.length);
+        for (int row = 0; row < union.getNumRows(); row++) {
+            assessor.add(union, row, qis);
+        }
+        assertEquals(1500L, merged.getNumRecords());
+        final OperationRiskAssessment assessment = new OperationRiskAssessment(thresholds);
+        final ParametersRisk expected = assessment.calculate(assessor);
+        final ParametersRisk actual = merged.getRisks(thresholds);
+        assertEquals(expected.getAverageRisk(), actual.getAverageRisk(), 1e-9d);
+        assertEquals(expected.getRecordsAtRisk(), actual.getRecordsAtRisk(), 1e-9d);
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Exception {
+        final RiskSummary summary = new RiskSummary(Arrays.asList("sex", "zip"));
+        summary.add(Arrays.asList("M", "4711"), 3L);
+        summary.add(Arrays.asList("F", null), 2L);
+        summary.add(Arrays.asList("M", "4711"), 1L);
+
+        //The classes held off-heap are written with the summary
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(summary);
+        }
+        final RiskSummary copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (RiskSummary) in.readObject();
+        }
+        assertEquals(summary.getQis(), copy.getQis());
+        assertEquals(2, copy.getNumClasses());
+        assertEquals(6L, copy.getNumRecords());
+        assertEquals(summary.toJson(), copy.toJson());
+
+        //Values added later are coded consistently
+        copy.add(Arrays.asList("M", "4711"), 1L);
+        assertEquals(2, copy.getNumClasses());
+    }
+
+    @Test
+    public void emptySummaries() {
+        final RiskSummary empty = new RiskSummary();
+        assertEquals(0L, empty.getNumRecords());
+        assertEquals(0, empty.getNumClasses());
+        final RiskSummary summary = new RiskSummary(Arrays.asList("sex"));
+        summary.add(Arrays.asList("M"), 2L);
+        assertEquals(2L, empty.merge(summary).merge(new RiskSummary()).getNumRecords());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addToEmptySummary() {
+        //The quasi-identifiers of an empty summary are only known once another summary has been merged into it
+        new RiskSummary().add(Arrays.asList("M"), 1L);
+    }
+
+    @Test
+    public void verdictOfMergedSummaries() {
+        final ParametersRisk thresholds = OperationCellSuppressionTest.risk("sex");
+        final RiskSummary first = new RiskSummary(Arrays.asList("sex"));
+        first.add(Arrays.asList("M"), 30L);
+        first.add(Arrays.asList("F"), 1L);
+        final RiskSummary second = new RiskSummary(Arrays.asList("sex"));
+        second.add(Arrays.asList("M"), 1L);
+        second.add(Arrays.asList("F"), 29L);
+
+        //Each summary violates the thresholds, but the whole data does not
+        assertFalse(first.getRisks(thresholds).satisfies(thresholds));
+        assertFalse(second.getRisks(thresholds).satisfies(thresholds));
+
+        //The verdict for the whole data is computed by the pipeline, as described in the README
+        final Pipeline pipeline = Pipeline.create();
+        final PCollection<Boolean> satisfied = pipeline
+                .apply(Create.of(RiskSummary.of(first.toJson()), RiskSummary.of(second.toJson())).withCoder(SerializableCoder.of(RiskSummary.class)))
+                .apply(Combine.globally(new RiskSummaryCombineFn(thresholds)))
+                .apply(MapElements.into(TypeDescriptors.booleans()).via(risk -> risk.satisfies(thresholds)));
+        PAssert.thatSingleton(satisfied).isEqualTo(true);
+        pipeline.run().waitUntilFinish();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Talend re-identification risk management step
+ * Copyright (C) 2019 Florian Wiedner
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.deidentifier.arx.talend.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.talend.sdk.component.api.record.Record;
+import org.talend.sdk.component.api.service.record.RecordBuilderFactory;
+
+/**
+ * Generates synthetic records one at a time, so that arbitrarily large inputs can be
+ * streamed through the processor. The values of each quasi-identifier follow a Zipf
+ * distribution over its cardinality. Any value may be null with the given rate. The
+ * payload consists of string columns of the given length, or alternates between strings,
+ * integers and doubles. The same settings and seed always yield the same records. The
+ * generator is shared with the benchmarks.
+ * @author Florian Wiedner
+ */
+public class SyntheticRecords implements Iterator<Record> {
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final RecordBuilderFactory factory;
+    private final long rows;
+    private final Random random;
+    private int[] cardinalities = {10, 100};
+    private double skew = 1d;
+    private double nullRate = 0d;
+    private int payloadColumns = 2;
+    private int payloadLength = 16;
+    private boolean typedPayload = false;
+    private String[] header;
+    private double[][] distributions;
+    private long generated;
+
+    /**
+     * Constructor.
+     *
+     * @param factory The factory for records
+     * @param rows The number of records
+     * @param seed The seed
+     */
+    public SyntheticRecords(RecordBuilderFactory factory, long rows, long seed) {
+        this.factory = factory;
+        this.rows = rows;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets the number of distinct values of each quasi-identifier.
+     *
+     * @param cardinalities The cardinality of each quasi-identifier
+     * @return SyntheticRecords
+     */
+    public SyntheticRecords withQis(int... cardinalities) {
+        this.cardinalities = cardinalities.clone();
+        return this;
+    }
+
+    /**
+     * Sets the exponent of the Zipf distribution. Zero yields uniformly distributed values.
+     *
+     * @param skew The exponent
+     * @return SyntheticRecords
+     */
+    public SyntheticRecords withSkew(double skew) {
+        this.skew = skew;
+        return this;
+    }
+
+    /**
+     * Sets the probability of each value to be null.
+     *
+     * @param nullRate The probability
+     * @return SyntheticRecords
+     */
+    public SyntheticRecords withNullRate(double nullRate) {
+        this.nullRate = nullRate;
+        return this;
+    }
+
+    /**
+     * Sets the payload, which is not part of the quasi-identifiers.
+     *
+     * @param columns The number of columns
+     * @param length The length of each value
+     * @return SyntheticRecords
+     */
+    public SyntheticRecords withPayload(int columns, int length) {
+        this.payloadColumns = columns;
+        this.payloadLength = length;
+        return this;
+    }
+
+    /**
+     * Sets whether the payload columns alternate between strings, integers and doubles,
+     * instead of being strings only.
+     *
+     * @param typedPayload Whether the payload is typed
+     * @return SyntheticRecords
+     */
+    public SyntheticRecords withTypedPayload(boolean typedPayload) {
+        this.typedPayload = typedPayload;
+        return this;
+    }
+
+    /**
+     * Returns the names of all columns, quasi-identifiers first.
+     *
+     * @return List<String>
+     */
+    public List<String> getHeader() {
+        prepare();
+        return Arrays.asList(header);
+    }
+
+    /**
+     * Returns the quasi-identifiers.
+     *
+     * @return List<ParametersRisk.QIValue>
+     */
+    public List<ParametersRisk.QIValue> getQis() {
+        prepare();
+        List<ParametersRisk.QIValue> qis = new ArrayList<>();
+        for (int i = 0; i < cardinalities.length; i++) {
+            ParametersRisk.QIValue qi = new ParametersRisk.QIValue();
+            qi.setField(header[i]);
+            qis.add(qi);
+        }
+        return qis;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return generated < rows;
+    }
+
+    @Override
+    public Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        prepare();
+        generated++;
+        Record.Builder builder = factory.newRecordBuilder();
+        for (int i = 0; i < cardinalities.length; i++) {
+            int index = Arrays.binarySearch(distributions[i], random.nextDouble());
+            int rank = Math.min(cardinalities[i] - 1, index < 0 ? -index - 1 : index);
+            builder.withString(header[i], isNull() ? null : "v" + rank);
+        }
+        char[] value = new char[payloadLength];
+        for (int i = cardinalities.length; i < header.length; i++) {
+            int type = typedPayload ? (i - cardinalities.length) % 3 : 0;
+            if (type == 1) {
+                builder.withInt(header[i], random.nextInt(100000));
+            } else if (type == 2) {
+                builder.withDouble(header[i], random.nextGaussian() * 1000d);
+            } else {
+                for (int j = 0; j < value.length; j++) {
+                    value[j] = ALPHABET[random.nextInt(ALPHABET.length)];
+                }
+                builder.withString(header[i], isNull() ? null : new String(value));
+            }
+        }
+        return builder.build();
+    }
+
+    private boolean isNull() {
+        return nullRate > 0d && random.nextDouble() < nullRate;
+    }
+
+    /**
+     * Prepares the header and the cumulative distribution of each quasi-identifier,
+     * once the settings are complete.
+     */
+    private void prepare() {
+        if (header != null) {
+            return;
+        }
+        header = new String[cardinalities.length + payloadColumns];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = i < cardinalities.length ? "qi" + i : "payload" + (i - cardinalities.length);
+        }
+        distributions = new double[cardinalities.length][];
+        for (int i = 0; i < cardinalities.length; i++) {
+            double[] cumulative = new double[cardinalities[i]];
+            double sum = 0d;
+            for (int rank = 0; rank < cumulative.length; rank++) {
+                sum += 1d / Math.pow(rank + 1, skew);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < cumulative.length; rank++) {
+                cumulative[rank] /= sum;
+            }
+            distributions[i] = cumulative;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+import org.talend.sdk.component.api.processor.OutputEmitter;
+import org.talend.sdk.component.api.record.Record;
+import org.talend.sdk.component.runtime.record.RecordBuilderFactoryImpl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput regression tests on large synthetic workloads. They depend on the machine
+ * and are thus only run with the profile throughput, e.g. mvn test -Pthroughput.
+ */
+public class ThroughputTest {
+
+    //Size of the synthetic workloads and thresholds for regressions, may be raised for 1M, 10M or 50M rows
+    private static final long SYNTHETIC_ROWS = Long.getLong("arx.test.rows", 100000L);
+    private static final double MIN_ROWS_PER_SECOND = Double.parseDouble(System.getProperty("arx.test.minRowsPerSecond", "1000"));
+    private static final long MAX_PEAK_HEAP = Long.getLong("arx.test.maxPeakHeapMb", 512L) * 1024L * 1024L;
+
+    @Test
+    public void throughputAnonymize(){
+        //Initialization
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), SYNTHETIC_ROWS, 42L)
+                .withQis(2, 20, 100).withSkew(1d).withNullRate(0.01d).withPayload(4, 32);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ANONYMIZE);
+        configuration.getRuntimeSettings().setBlockSize(10000);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //No rows are lost, and neither time nor heap grow out of bounds
+        assertEquals(SYNTHETIC_ROWS, this.stream(configuration, input));
+    }
+
+    @Test
+    public void throughputAssess(){
+        //Initialization
+        final SyntheticRecords input = new SyntheticRecords(new RecordBuilderFactoryImpl("test"), SYNTHETIC_ROWS, 42L)
+                .withQis(2, 20, 100, 1000).withSkew(1.2d).withNullRate(0.01d).withPayload(8, 64);
+        final ARXDeidentifierProcessorConfiguration configuration = new ARXDeidentifierProcessorConfiguration();
+        configuration.setRiskSettings(new ParametersRisk());
+        configuration.setRuntimeSettings(new ParametersRuntime());
+        configuration.getRuntimeSettings().setMode(ParametersRuntime.Mode.ASSESS);
+        configuration.getRuntimeSettings().setBlockSize(50000);
+        configuration.getRuntimeSettings().setStreamingAssessment(true);
+        configuration.getRiskSettings().setQis(input.getQis());
+        configuration.getRuntimeSettings().setInputStructure(input.getHeader());
+
+        //No rows are lost, and neither time nor heap grow out of bounds
+        assertEquals(SYNTHETIC_ROWS, this.stream(configuration, input));
+    }
+
+    /**
+     * Streams the records through a processor, without keeping the input or the output,
+     * and checks the throughput and the growth of the heap against the thresholds.
+     *
+     * @param configuration The configuration
+     * @param input The records
+     * @return long The number of emitted rows
+     */
+    private long stream(final ARXDeidentifierProcessorConfiguration configuration, final Iterator<Record> input){
+        final long[] emitted = new long[1];
+        final OutputEmitter<Object> counter = value -> emitted[0]++;
+        final ARXDeidentifierProcessor processor = new ARXDeidentifierProcessor(configuration, new RecordBuilderFactoryImpl("test"));
+        System.gc();
+        long baseline = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                baseline += pool.getUsage().getUsed();
+                pool.resetPeakUsage();
+            }
+        }
+        long rows = 0L;
+        long start = System.nanoTime();
+        processor.init();
+        while (input.hasNext()) {
+            processor.bufferizer(input.next(), counter, counter);
+            rows++;
+        }
+        processor.endBatch(counter, counter, counter);
+        processor.release();
+        double seconds = (System.nanoTime() - start) / 1e9d;
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        assertTrue("Throughput of " + (rows / seconds) + " rows/s below " + MIN_ROWS_PER_SECOND, rows / seconds >= MIN_ROWS_PER_SECOND);
+        assertTrue("Peak heap grew by " + (peak - baseline) + " bytes", peak - baseline <= MAX_PEAK_HEAP);
+        return emitted[0];
+    }
+}
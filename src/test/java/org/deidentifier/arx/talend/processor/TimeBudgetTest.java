@@ -0,0 +1,55 @@
+package org.deidentifier.arx.talend.processor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class TimeBudgetTest {
+
+    @Test
+    public void unknownRowsLeaveTimeForLaterBlocks() {
+        //The first block must not receive the whole deadline, as further blocks may follow
+        final TimeBudget budget = new TimeBudget(runtime(100, 0L));
+        final int first = budget.getTimeLimit(1000);
+        assertTrue("First block received " + first + " ms", first <= 25000);
+        assertTrue("First block received " + first + " ms", first >= 24000);
+
+        //Every block of a multi-block job receives a non-trivial limit, also after fast blocks
+        for (int block = 0; block < 20; block++) {
+            final int limit = budget.getTimeLimit(1000);
+            assertTrue("Block " + block + " received " + limit + " ms", limit >= 4000);
+            budget.record(1000, 1000000L);
+        }
+    }
+
+    @Test
+    public void expectedRowsShareTheDeadline() {
+        //Ten blocks of the same size share the deadline evenly
+        final TimeBudget budget = new TimeBudget(runtime(100, 10000L));
+        final int first = budget.getTimeLimit(1000);
+        assertTrue("First block received " + first + " ms", first <= 10000);
+        assertTrue("First block received " + first + " ms", first >= 9500);
+
+        //Time not needed by earlier blocks is passed on, up to the time the remaining rows are expected to need
+        budget.record(1000, 1000000000L);
+        final int second = budget.getTimeLimit(1000);
+        assertTrue("Second block received " + second + " ms", second >= 90000);
+    }
+
+    @Test
+    public void lastBlockReceivesRemainingTime() {
+        final TimeBudget budget = new TimeBudget(runtime(10, 1000L));
+        final int limit = budget.getTimeLimit(1000);
+        assertTrue("Last block received " + limit + " ms", limit >= 9500);
+        assertTrue("Last block received " + limit + " ms", limit <= 10000);
+    }
+
+    /**
+     * Returns the settings for a job with the given deadline and number of rows
+     */
+    private static ParametersRuntime runtime(int seconds, long rows) {
+        final ParametersRuntime runtime = new ParametersRuntime();
+        runtime.setJobDeadlineSeconds(seconds);
+        runtime.setExpectedRows(rows);
+        return runtime;
+    }
+}